@@ -0,0 +1,112 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers shared by the connections of an end point, either all heap or all
+ * direct buffers. Buffers are pooled in size classes of powers of two, from
+ * 64 bytes to 16 MB, plus a buffer per thread to serialize a single frame into
+ * before it is queued. This class is thread-safe.
+ */
+class BufferPool {
+	static final int MIN_SIZE_SHIFT = 6, MAX_SIZE_SHIFT = 24;
+	/** The default for the maximum number of bytes kept for reuse. */
+	static final long MAX_FREE_BYTES = 32 * 1024 * 1024;
+
+	final boolean direct;
+	private final long maxFreeBytes;
+	private final ConcurrentLinkedQueue<ByteBuffer>[] free;
+	private final AtomicLong freeBytes = new AtomicLong();
+	private final ThreadLocal<ByteBuffer> frames;
+
+	/**
+	 * @param maxFreeBytes
+	 *            The maximum number of bytes of freed buffers kept for reuse.
+	 * @param frameSize
+	 *            The size of the per thread frame buffers, which limits the
+	 *            size of a serialized object.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	BufferPool(boolean direct, long maxFreeBytes, int frameSize) {
+		this.direct = direct;
+		this.maxFreeBytes = maxFreeBytes;
+		free = new ConcurrentLinkedQueue[MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1];
+		for (int i = 0; i < free.length; i++)
+			free[i] = new ConcurrentLinkedQueue<>();
+		frames = ThreadLocal.withInitial(() -> ByteBuffer.allocate(frameSize));
+	}
+
+	/**
+	 * Returns a cleared buffer of the smallest size class that fits the size,
+	 * allocating it if none is free. Buffers larger than the largest size
+	 * class are allocated with the exact size and not pooled.
+	 */
+	ByteBuffer obtain(int size) {
+		int sizeClass = sizeClass(size);
+		if (sizeClass == -1)
+			return allocate(size);
+		ByteBuffer buffer = free[sizeClass].poll();
+		if (buffer == null)
+			return allocate(1 << (sizeClass + MIN_SIZE_SHIFT));
+		freeBytes.addAndGet(-buffer.capacity());
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer obtained from this pool. Other buffers are ignored. The
+	 * buffer must no longer be used.
+	 */
+	void free(ByteBuffer buffer) {
+		int capacity = buffer.capacity();
+		int sizeClass = sizeClass(capacity);
+		if (sizeClass == -1 || capacity != 1 << (sizeClass + MIN_SIZE_SHIFT)
+				|| buffer.isDirect() != direct)
+			return;
+		if (freeBytes.addAndGet(capacity) > maxFreeBytes) {
+			freeBytes.addAndGet(-capacity);
+			return;
+		}
+		free[sizeClass].offer(buffer);
+	}
+
+	/** Returns the cleared frame buffer of the calling thread. */
+	ByteBuffer frame() {
+		ByteBuffer frame = frames.get();
+		frame.clear();
+		return frame;
+	}
+
+	private ByteBuffer allocate(int size) {
+		return direct ? ByteBuffer.allocateDirect(size)
+				: ByteBuffer.allocate(size);
+	}
+
+	/** @return The size class index or -1 if larger than the largest class. */
+	static int sizeClass(int size) {
+		int shift = size <= 1 << MIN_SIZE_SHIFT ? MIN_SIZE_SHIFT
+				: 32 - Integer.numberOfLeadingZeros(size - 1);
+		return shift > MAX_SIZE_SHIFT ? -1 : shift - MIN_SIZE_SHIFT;
+	}
+}
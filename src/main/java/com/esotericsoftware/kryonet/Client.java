@@ -46,6 +46,7 @@ import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryonet.FrameworkMessage.DiscoverHost;
@@ -53,6 +54,7 @@ import com.esotericsoftware.kryonet.FrameworkMessage.RegisterTCP;
 import com.esotericsoftware.kryonet.FrameworkMessage.RegisterUDP;
 import com.esotericsoftware.kryonet.serialization.KryoSerialization;
 import com.esotericsoftware.kryonet.serialization.Serialization;
+import com.esotericsoftware.kryonet.serialization.ThreadLocalKryoSerialization;
 
 /**
  * Represents a TCP and optionally a UDP connection to a {@link Server}.
@@ -74,6 +76,7 @@ public class Client extends Connection implements EndPoint {
 	private final Serialization serialization;
 	private Selector selector;
 	private int emptySelects;
+	private volatile WaitStrategy waitStrategy = new WaitStrategy.Blocking();
 	private volatile boolean tcpRegistered, udpRegistered;
 	private final Object tcpRegistrationLock = new Object();
 	private final Object udpRegistrationLock = new Object();
@@ -86,6 +89,9 @@ public class Client extends Connection implements EndPoint {
 	private int connectUdpPort;
 	private boolean isClosed;
 	private ClientDiscoveryHandler discoveryHandler;
+	private boolean udpAck;
+	/** When the next reliable UDP datagram is due to be resent, or 0. */
+	private long nextResendTime;
 
 	/**
 	 * Creates a Client with a write buffer size of <code>8192</code> and an
@@ -111,7 +117,8 @@ public class Client extends Connection implements EndPoint {
 	 *            for some serialized objects to be queued in case the buffer is
 	 *            temporarily not writable. The amount of head room needed is
 	 *            dependent upon the size of objects being sent and how often
-	 *            they are sent.
+	 *            they are sent. See {@link #setWriteQueue(int, int)} to queue
+	 *            the bytes without a fixed limit instead.
 	 * @param objectBufferSize
 	 *            One (using only TCP) or three (using both TCP and UDP) buffers
 	 *            of this size are allocated. These buffers are used to hold the
@@ -135,13 +142,40 @@ public class Client extends Connection implements EndPoint {
 		this.discoveryHandler = new ClientDiscoveryHandler() {
 		};
 
-		initialize(serialization, writeBufferSize, objectBufferSize);
+		initialize(serialization, writeBufferSize, objectBufferSize, null,
+				null);
+		udpDeliveries = new ConcurrentHashMap<>();
 
 		try {
 			selector = Selector.open();
 		} catch (IOException ex) {
 			throw new RuntimeException("Error opening selector.", ex);
 		}
+		tcp.flushQueue = new FlushQueue(selector);
+	}
+
+	/**
+	 * Sets the delivery of the objects of the type, but not its subtypes,
+	 * sent with {@link #sendUDP(Object)}. <code>null</code> restores
+	 * {@link UdpDelivery#UNRELIABLE}.
+	 * 
+	 * @see #sendUDP(Object, UdpDelivery)
+	 */
+	public void setUdpDelivery(Class<?> type, UdpDelivery delivery) {
+		if (delivery == null || delivery == UdpDelivery.UNRELIABLE)
+			udpDeliveries.remove(type);
+		else
+			udpDeliveries.put(type, delivery);
+	}
+
+	/**
+	 * Sets how the update thread waits for the selector. Defaults to
+	 * {@link WaitStrategy.Blocking}.
+	 */
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		if (waitStrategy == null)
+			throw new NullPointerException("waitStrategy cannot be null.");
+		this.waitStrategy = waitStrategy;
 	}
 
 	public void setDiscoveryHandler(
@@ -149,6 +183,32 @@ public class Client extends Connection implements EndPoint {
 		discoveryHandler = newDiscoveryHandler;
 	}
 
+	/**
+	 * Queues the objects sent over TCP as frames in pooled buffers instead of
+	 * the write buffer. Sending threads don't lock, the update thread writes
+	 * the frames. The queue is unbounded, the client becomes
+	 * {@linkplain #isWritable() unwritable} once more than
+	 * <code>highWatermark</code> bytes are queued and writable again once
+	 * drained to <code>lowWatermark</code> bytes. Must be called while not
+	 * connected.
+	 * 
+	 * @see Server#setWriteQueue(int, int)
+	 */
+	public void setWriteQueue(int lowWatermark, int highWatermark) {
+		if (tcp.socketChannel != null)
+			throw new IllegalStateException(
+					"The write queue cannot be changed while connected.");
+		tcp.setWriteQueue(new WriteQueue(
+				new BufferPool(false, BufferPool.MAX_FREE_BYTES,
+						tcp.writeBufferSize),
+				lowWatermark, highWatermark));
+	}
+
+	/**
+	 * {@inheritDoc} A {@link ThreadLocalKryoSerialization} uses a Kryo
+	 * instance per thread, so <code>null</code> is returned for it too. Its
+	 * classes are registered by the initializer passed to its constructor.
+	 */
 	@Override
 	public Kryo getKryo() {
 		return serialization instanceof KryoSerialization
@@ -334,26 +394,14 @@ public class Client extends Connection implements EndPoint {
 									// selector is used to bind the server
 									// connection.
 		}
-		long startTime = System.currentTimeMillis();
-		int select = 0;
-		if (timeout > 0) {
-			select = selector.select(timeout);
-		} else {
-			select = selector.selectNow();
-		}
+		int selectTimeout = ReliableUdp.selectTimeout(
+				tcp.flushQueue.selectTimeout(timeout), nextResendTime);
+		int select = waitStrategy.select(selector, selectTimeout,
+				selectTimeout == timeout ? emptySelects : 0);
 		if (select == 0) {
-			emptySelects++;
-			if (emptySelects == 100) {
-				emptySelects = 0;
-				// NIO freaks and returns immediately with 0 sometimes, so try
-				// to keep from hogging the CPU.
-				long elapsedTime = System.currentTimeMillis() - startTime;
-				try {
-					if (elapsedTime < 25)
-						Thread.sleep(25 - elapsedTime);
-				} catch (InterruptedException ex) {
-				}
-			}
+			// A timeout shortened for lingering is expected.
+			if (selectTimeout == timeout && emptySelects < Integer.MAX_VALUE)
+				emptySelects++;
 		} else {
 			emptySelects = 0;
 			isClosed = false;
@@ -364,6 +412,9 @@ public class Client extends Connection implements EndPoint {
 					keepAlive();
 					SelectionKey selectionKey = iter.next();
 					iter.remove();
+					// The key of a channel closed by a reconnect meanwhile.
+					if (!selectionKey.isValid())
+						continue;
 					try {
 						int ops = selectionKey.readyOps();
 						if ((ops & SelectionKey.OP_READ) == SelectionKey.OP_READ) {
@@ -431,42 +482,62 @@ public class Client extends Connection implements EndPoint {
 									notifyReceived(object);
 								}
 							} else {
-								if (udp.readFromAddress() == null)
-									continue;
-								Object object = udp.readObject(this);
-								if (object == null)
-									continue;
-								if (DEBUG) {
-									String objectString = object == null
-											? "null"
-											: object.getClass().getSimpleName();
-									debug("kryonet", this + " received UDP: "
-											+ objectString);
-								}
-								notifyReceived(object);
+								readUDP();
 							}
 						}
-						if ((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE)
+						if ((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE) {
 							tcp.writeOperation();
+							notifyWritabilityChanged();
+						}
 					} catch (CancelledKeyException ignored) {
 						// Connection is closed.
 					}
 				}
 			}
+			if (udpAck) {
+				udpAck = false;
+				sendUdpAck();
+			}
 		}
 		if (isConnected) {
 			long time = System.currentTimeMillis();
+			tcp.flushQueue.flush(time);
 			if (tcp.isTimedOut(time)) {
 				if (DEBUG)
 					debug("kryonet", this + " timed out.");
 				close();
 			} else
 				keepAlive();
+			sendChunks();
+			flushUDP();
+			nextResendTime = resendUDP(time);
 			if (isIdle())
 				notifyIdle();
 		}
 	}
 
+	/**
+	 * Reads the datagrams received since the last select, up to
+	 * {@link UdpConnection#RECEIVE_BUDGET}, so one select is shared by many
+	 * datagrams.
+	 */
+	private void readUDP() throws IOException {
+		for (int i = 0; i < UdpConnection.RECEIVE_BUDGET; i++) {
+			if (udp.readFromAddress() == null)
+				return; // No more datagrams.
+			// A datagram holds more than one object if they were packed.
+			Object object;
+			while ((object = udp.readObject(this)) != null) {
+				if (DEBUG) {
+					String objectString = object.getClass().getSimpleName();
+					debug("kryonet", this + " received UDP: " + objectString);
+				}
+				if (receiveUDP(object))
+					udpAck = true;
+			}
+		}
+	}
+
 	void keepAlive() {
 		if (!isConnected)
 			return;
@@ -33,10 +33,16 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryonet.FrameworkMessage.Ping;
+import com.esotericsoftware.kryonet.FrameworkMessage.Reliable;
 import com.esotericsoftware.kryonet.serialization.Serialization;
 
 // BOZO - Layer to handle handshake state.
@@ -52,25 +58,45 @@ public class Connection {
 	int id = -1;
 	private String name;
 	EndPoint endPoint;
+	ServerWorker worker;
 	TcpConnection tcp;
 	UdpConnection udp;
 	InetSocketAddress udpRemoteAddress;
 	private Listener[] listeners = {};
 	private final Object listenerLock = new Object();
+	/** Whether a listener of this connection handles the idle event. */
+	private volatile boolean idleListener;
 	private int lastPingID;
 	private long lastPingSendTime;
 	private int returnTripTime;
 	volatile boolean isConnected;
 	volatile KryoNetException lastProtocolError;
+	private volatile boolean writable = true;
+	private final Object writabilityLock = new Object();
 	private Object arbitraryData;
+	/** The deliveries of the objects sent over UDP by type, or null. */
+	Map<Class<?>, UdpDelivery> udpDeliveries;
+	private volatile ReliableUdp reliableUdp;
+	/** The objects delivered by a reliable UDP datagram. */
+	private final ArrayList<Object> udpDelivered = new ArrayList<>();
+	private volatile UdpPacker udpPacker;
+	int packetSizeUDP;
+	/** Used only by the thread reading UDP. */
+	private UdpFragments udpFragments;
+	/** Whether the worker's sweep reads this connection again. */
+	boolean readPending;
+	/** Whether this connection is queued for the worker's next sweep. */
+	final AtomicBoolean sweepPending = new AtomicBoolean();
 
 	protected Connection() {
 	}
 
 	void initialize(Serialization serialization, int writeBufferSize,
-			int objectBufferSize) {
+			int objectBufferSize, WriteQueue writeQueue,
+			BufferPool bufferPool) {
 		tcp = new TcpConnection(serialization, writeBufferSize,
-				objectBufferSize);
+				objectBufferSize, writeQueue, bufferPool);
+		packetSizeUDP = objectBufferSize;
 	}
 
 	/**
@@ -106,10 +132,223 @@ public class Connection {
 	 * @see Kryo#register(Class, com.esotericsoftware.kryo.Serializer)
 	 */
 	public int sendTCP(Object object) {
+		if (object == null)
+			throw new NullPointerException("object to send cannot be null.");
+		return sendTCP(object, null, true);
+	}
+
+	/**
+	 * Sends the object over the network using TCP. If <code>flush</code> is
+	 * false, the object is only queued ("corked") and written together with
+	 * the objects queued after it by the next {@link #flush()} or flushing
+	 * send. This saves a system call per object when many objects are sent at
+	 * once. The queued bytes count against the write buffer.
+	 *
+	 * @return The number of bytes queued.
+	 * @see #sendTCPBatch(Object...)
+	 */
+	public int sendTCP(Object object, boolean flush) {
+		if (object == null)
+			throw new NullPointerException("object to send cannot be null.");
+		return sendTCP(object, null, flush);
+	}
+
+	/**
+	 * Sends the objects over the network using TCP. They are queued while
+	 * holding the write lock once (without locking when using a write queue)
+	 * and written together.
+	 *
+	 * @return The number of bytes sent.
+	 */
+	public int sendTCPBatch(Object... objects) {
+		for (int i = 0, n = objects.length; i < n; i++)
+			if (objects[i] == null)
+				throw new NullPointerException(
+						"object to send cannot be null.");
+		try {
+			int length = tcp.send(this, objects);
+			if (DEBUG)
+				debug("kryonet", this + " sent TCP batch: " + objects.length
+						+ " objects (" + length + ")");
+			notifyWritabilityChanged();
+			return length;
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to send TCP with connection: " + this,
+						ex);
+			close();
+			return 0;
+		} catch (KryoNetException ex) {
+			if (ERROR)
+				error("kryonet", "Unable to send TCP with connection: " + this,
+						ex);
+			close();
+			return 0;
+		}
+	}
+
+	/**
+	 * Sends an object over TCP that may be larger than the write buffer and
+	 * the object buffer of the remote end. It is serialized once and sent in
+	 * {@linkplain #setChunkSizeTCP(int) chunks} while the connection is
+	 * {@linkplain #isIdle() idle}, so objects sent meanwhile are written
+	 * between the chunks instead of waiting behind the whole object. The
+	 * remote end reassembles the object and only holds a buffer for it while
+	 * the chunks are received. Chunked objects arrive in the order they were
+	 * sent, but possibly after objects sent later with
+	 * {@link #sendTCP(Object)}.
+	 * 
+	 * @return The number of bytes serialized.
+	 * @see #setMaxChunkedSizeTCP(int)
+	 */
+	public int sendTCPChunked(Object object) {
 		if (object == null)
 			throw new NullPointerException("object to send cannot be null.");
 		try {
-			int length = tcp.send(this, object);
+			int length = tcp.sendChunked(this, object);
+			markDirty();
+			if (DEBUG)
+				debug("kryonet", this + " sent TCP chunked: "
+						+ object.getClass().getSimpleName() + " (" + length
+						+ ")");
+			return length;
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to send TCP with connection: " + this,
+						ex);
+			close();
+			return 0;
+		} catch (KryoNetException ex) {
+			if (ERROR)
+				error("kryonet", "Unable to send TCP with connection: " + this,
+						ex);
+			close();
+			return 0;
+		}
+	}
+
+	/**
+	 * Sends <code>count</code> bytes of the file, starting at
+	 * <code>position</code>, over TCP after the objects sent so far. The bytes
+	 * are written with {@link FileChannel#transferTo(long, long,
+	 * java.nio.channels.WritableByteChannel) transferTo}, so they are not
+	 * copied to the heap and not serialized. Objects sent meanwhile are
+	 * written after the file. The remote end passes the bytes to its
+	 * {@linkplain #setFileReceiver(FileReceiver) file receiver}.
+	 * <p>
+	 * The file is closed once it is sent or this connection is closed.
+	 * 
+	 * @param descriptor
+	 *            Sent before the bytes, e.g. the name of the file. Must fit
+	 *            into the object buffer of the remote end. May be
+	 *            <code>null</code>.
+	 */
+	public void sendFile(Object descriptor, FileChannel file, long position,
+			long count) {
+		if (file == null)
+			throw new NullPointerException("file cannot be null.");
+		if (position < 0 || count < 0)
+			throw new IllegalArgumentException(
+					"Invalid position: " + position + ", count: " + count);
+		sendFile(descriptor, file, position, count, null);
+	}
+
+	/**
+	 * Sends the remaining bytes of the buffer, e.g. a
+	 * {@linkplain FileChannel#map(java.nio.channels.FileChannel.MapMode, long, long)
+	 * mapped} region of a file, like
+	 * {@link #sendFile(Object, FileChannel, long, long)}. The buffer must not
+	 * be modified until it is sent.
+	 */
+	public void sendFile(Object descriptor, ByteBuffer buffer) {
+		if (buffer == null)
+			throw new NullPointerException("buffer cannot be null.");
+		sendFile(descriptor, null, 0, buffer.remaining(), buffer);
+	}
+
+	private void sendFile(Object descriptor, FileChannel file, long position,
+			long count, ByteBuffer buffer) {
+		try {
+			tcp.sendFile(this, descriptor, file, position, count, buffer);
+			if (DEBUG)
+				debug("kryonet", this + " sending file: " + descriptor + " ("
+						+ count + ")");
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to send TCP with connection: " + this,
+						ex);
+			close();
+		} catch (KryoNetException ex) {
+			if (ERROR)
+				error("kryonet", "Unable to send TCP with connection: " + this,
+						ex);
+			close();
+		}
+	}
+
+	/**
+	 * Sets the receiver of the files sent by the remote end with
+	 * {@link #sendFile(Object, FileChannel, long, long)}. Without a receiver
+	 * the bytes are discarded.
+	 */
+	public void setFileReceiver(FileReceiver fileReceiver) {
+		tcp.fileReceiver = fileReceiver;
+	}
+
+	/**
+	 * Sends the next chunks of the objects sent with
+	 * {@link #sendTCPChunked(Object)}. Called on the network thread for each
+	 * update while chunks are left.
+	 */
+	void sendChunks() {
+		if (!tcp.hasChunks())
+			return;
+		try {
+			tcp.sendChunks(this);
+			notifyWritabilityChanged();
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to send TCP with connection: " + this,
+						ex);
+			close();
+		} catch (KryoNetException ex) {
+			if (ERROR)
+				error("kryonet", "Unable to send TCP with connection: " + this,
+						ex);
+			close();
+		}
+	}
+
+	/**
+	 * Writes the objects queued over TCP immediately, including objects sent
+	 * without flushing and objects waiting for the
+	 * {@linkplain #setLingerTCP(int) linger time} to pass.
+	 */
+	public void flush() {
+		try {
+			tcp.flush(this);
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to flush TCP with connection: " + this,
+						ex);
+			close();
+		}
+	}
+
+	/**
+	 * @param frame
+	 *            The object already serialized by
+	 *            {@link TcpConnection#send(Connection, ByteBuffer)}, or
+	 *            <code>null</code> to serialize it for this connection.
+	 */
+	int sendTCP(Object object, ByteBuffer frame) {
+		return sendTCP(object, frame, true);
+	}
+
+	private int sendTCP(Object object, ByteBuffer frame, boolean flush) {
+		try {
+			int length = frame == null ? tcp.send(this, object, flush)
+					: tcp.send(this, frame);
 			if (length == 0) {
 				if (TRACE)
 					trace("kryonet", this + " TCP had nothing to send.");
@@ -124,6 +363,7 @@ public class Connection {
 							+ length + ")");
 				}
 			}
+			notifyWritabilityChanged();
 			return length;
 		} catch (IOException ex) {
 			if (DEBUG)
@@ -151,18 +391,166 @@ public class Connection {
 	public int sendUDP(Object object) {
 		if (object == null)
 			throw new NullPointerException("object to send cannot be null.");
+		return sendUDP(object, (ByteBuffer) null);
+	}
+
+	/**
+	 * Sends the object over the network using UDP with the given delivery.
+	 * Reliable objects are resent until the remote end acknowledges them,
+	 * using the round trip time measured with the acknowledgements. The
+	 * acknowledgements are sent along with the reliable and sequenced objects
+	 * sent in the other direction, or on their own. If an object is not
+	 * acknowledged within the {@linkplain #setTimeout(int) timeout}, the
+	 * connection is closed.
+	 * 
+	 * @return The number of bytes sent or queued to be sent.
+	 * @throws IllegalStateException
+	 *             if this connection was not opened with both TCP and UDP.
+	 * @see Server#setUdpDelivery(Class, UdpDelivery)
+	 * @see Client#setUdpDelivery(Class, UdpDelivery)
+	 */
+	public int sendUDP(Object object, UdpDelivery delivery) {
+		if (object == null)
+			throw new NullPointerException("object to send cannot be null.");
+		if (delivery == null)
+			throw new NullPointerException("delivery cannot be null.");
+		return sendUDP(object, null, delivery);
+	}
+
+	/**
+	 * Sends the object over the network using UDP, optionally packed with
+	 * other objects.
+	 * 
+	 * @param flush
+	 *            If false, the object is packed with the other objects sent
+	 *            this way into datagrams of up to the
+	 *            {@linkplain #setPacketSizeUDP(int) packet size}. They are sent
+	 *            when a datagram is full, when {@link #flushUDP()} is called
+	 *            and at the end of each update of the end point. The remote
+	 *            end receives the objects of a datagram one after another.
+	 *            Objects with a reliable or sequenced
+	 *            {@linkplain Server#setUdpDelivery(Class, UdpDelivery)
+	 *            delivery} are never packed.
+	 * @return The number of bytes serialized.
+	 * @throws IllegalStateException
+	 *             if this connection was not opened with both TCP and UDP.
+	 */
+	public int sendUDP(Object object, boolean flush) {
+		if (object == null)
+			throw new NullPointerException("object to send cannot be null.");
+		if (udpDeliveries != null
+				&& udpDeliveries.containsKey(object.getClass()))
+			return sendUDP(object, (ByteBuffer) null);
+		UdpPacker udpPacker = this.udpPacker;
+		if (flush && (udpPacker == null || udpPacker.isEmpty()))
+			return sendUDP(object, (ByteBuffer) null);
+		SocketAddress address = udpAddress();
+		try {
+			if (address == null)
+				throw new SocketException("Connection is closed.");
+			if (udpPacker == null)
+				udpPacker = udpPacker();
+			int length = udpPacker.add(this, object, address, packetSizeUDP);
+			if (flush)
+				udpPacker.flush(this, address);
+			else
+				markDirty();
+			if (DEBUG) {
+				if (!(object instanceof FrameworkMessage))
+					debug("kryonet", this + " packed UDP: "
+							+ object.getClass().getSimpleName() + " (" + length
+							+ ")");
+			}
+			return length;
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to send UDP with connection: " + this,
+						ex);
+			close();
+			return 0;
+		} catch (KryoNetException ex) {
+			if (ERROR)
+				error("kryonet", "Unable to send UDP with connection: " + this,
+						ex);
+			close();
+			return 0;
+		}
+	}
+
+	/**
+	 * Sends the objects {@linkplain #sendUDP(Object, boolean) packed} so far.
+	 * Should be called at the end of each tick of the application, so the
+	 * objects do not wait for the next update of the end point.
+	 */
+	public void flushUDP() {
+		UdpPacker udpPacker = this.udpPacker;
+		if (udpPacker == null || udpPacker.isEmpty())
+			return;
+		try {
+			SocketAddress address = udpAddress();
+			if (address != null)
+				udpPacker.flush(this, address);
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to send UDP with connection: " + this,
+						ex);
+			close();
+		}
+	}
+
+	private UdpPacker udpPacker() {
+		UdpPacker udpPacker = this.udpPacker;
+		if (udpPacker == null) {
+			synchronized (udpDelivered) {
+				udpPacker = this.udpPacker;
+				if (udpPacker == null)
+					udpPacker = this.udpPacker = new UdpPacker(udp.bufferSize);
+			}
+		}
+		return udpPacker;
+	}
+
+	/**
+	 * @param datagram
+	 *            The object already serialized by
+	 *            {@link UdpConnection#send(ByteBuffer, SocketAddress)}, or
+	 *            <code>null</code> to serialize it for this connection.
+	 */
+	int sendUDP(Object object, ByteBuffer datagram) {
+		UdpDelivery delivery = UdpDelivery.UNRELIABLE;
+		if (datagram == null && udpDeliveries != null) {
+			UdpDelivery typeDelivery = udpDeliveries.get(object.getClass());
+			if (typeDelivery != null)
+				delivery = typeDelivery;
+		}
+		return sendUDP(object, datagram, delivery);
+	}
+
+	private SocketAddress udpAddress() {
 		SocketAddress address = udpRemoteAddress;
 		if (address == null && udp != null)
 			address = udp.connectedAddress;
 		if (address == null && isConnected)
 			throw new IllegalStateException(
 					"This connection is not connected via UDP.");
+		return address;
+	}
 
+	private int sendUDP(Object object, ByteBuffer datagram,
+			UdpDelivery delivery) {
+		SocketAddress address = udpAddress();
 		try {
 			if (address == null)
 				throw new SocketException("Connection is closed.");
 
-			int length = udp.send(this, object, address);
+			int length;
+			if (delivery != UdpDelivery.UNRELIABLE) {
+				length = reliableUdp().send(this, object, delivery, address);
+				markDirty();
+			} else if (datagram == null)
+				length = udp.send(this, object, address);
+			else
+				length = udp.send(this, datagram, address);
 			if (length == 0) {
 				if (TRACE)
 					trace("kryonet", this + " UDP had nothing to send.");
@@ -204,7 +592,11 @@ public class Connection {
 		if (udp != null && udp.connectedAddress != null)
 			udp.close();
 		if (wasConnected) {
-			notifyDisconnected();
+			DecodeQueue decodeQueue = tcp.decodeQueue;
+			if (decodeQueue != null)
+				decodeQueue.disconnected();
+			else
+				notifyDisconnected();
 			if (INFO)
 				info("kryonet", this + " disconnected.");
 		}
@@ -263,6 +655,17 @@ public class Connection {
 		tcp.timeoutMillis = timeoutMillis;
 	}
 
+	/**
+	 * Objects sent over TCP are written after up to the specified
+	 * milliseconds, so objects sent in the meantime are written together with
+	 * fewer system calls, at the cost of latency. {@link #flush()} writes them
+	 * immediately. Set to <code>0</code> to disable. Defaults to
+	 * <code>0</code>.
+	 */
+	public void setLingerTCP(int lingerMillis) {
+		tcp.lingerMillis = lingerMillis;
+	}
+
 	/**
 	 * Adds a listener to the connection. If the given listener was already
 	 * added before, it is ignored.
@@ -283,7 +686,10 @@ public class Connection {
 			newListeners[0] = listener;
 			System.arraycopy(listeners, 0, newListeners, 1, n);
 			this.listeners = newListeners;
+			updateIdleListener(newListeners);
 		}
+		// The listener may wait for the idle event.
+		markDirty();
 		if (TRACE)
 			trace("kryonet", "Connection listener added: "
 					+ listener.getClass().getName());
@@ -307,6 +713,7 @@ public class Connection {
 				newListeners[ii++] = copyListener;
 			}
 			this.listeners = newListeners;
+			updateIdleListener(newListeners);
 		}
 		if (TRACE)
 			trace("kryonet", "Connection listener removed: "
@@ -338,6 +745,91 @@ public class Connection {
 			listeners[i].disconnected(this);
 	}
 
+	/**
+	 * Called after bytes were queued or written. Notifies the listeners if the
+	 * writability changed since they were last notified. The notifications
+	 * alternate and the last one always matches the current writability, even
+	 * when called concurrently.
+	 */
+	void notifyWritabilityChanged() {
+		markDirty();
+		if (tcp.isWritable() == writable)
+			return;
+		synchronized (writabilityLock) {
+			boolean writable = tcp.isWritable();
+			if (writable == this.writable)
+				return;
+			this.writable = writable;
+			if (DEBUG)
+				debug("kryonet", this + (writable ? " is writable again."
+						: " is no longer writable."));
+			Listener[] listeners = this.listeners;
+			for (int i = 0, n = listeners.length; i < n; i++)
+				listeners[i].writabilityChanged(this, writable);
+		}
+	}
+
+	/**
+	 * Makes the worker of a server connection visit it with its next sweep,
+	 * see {@link ServerWorker#sweep(long)}. This method is thread-safe.
+	 */
+	void markDirty() {
+		ServerWorker worker = this.worker;
+		if (worker != null)
+			worker.markDirty(this);
+	}
+
+	/**
+	 * Updates whether a listener handles the idle event. The listener that
+	 * dispatches to the server listeners is not counted, as the server tracks
+	 * its own listeners.
+	 */
+	private void updateIdleListener(Listener[] listeners) {
+		ServerWorker worker = this.worker;
+		Listener dispatchListener = worker != null
+				? worker.server.dispatchListener : null;
+		boolean idleListener = false;
+		for (int i = 0, n = listeners.length; i < n; i++) {
+			if (listeners[i] != dispatchListener
+					&& handlesIdle(listeners[i])) {
+				idleListener = true;
+				break;
+			}
+		}
+		this.idleListener = idleListener;
+	}
+
+	/**
+	 * Returns true if a listener of this connection or of its server handles
+	 * the idle event, so the connection is checked for each update.
+	 */
+	boolean handlesIdle() {
+		if (idleListener)
+			return true;
+		ServerWorker worker = this.worker;
+		return worker != null && worker.server.idleListener;
+	}
+
+	/**
+	 * Returns true if the listener overrides
+	 * {@link Listener#idle(Connection)}.
+	 */
+	static boolean handlesIdle(Listener listener) {
+		return idleListenerTypes.get(listener.getClass());
+	}
+
+	static private final ClassValue<Boolean> idleListenerTypes = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				return type.getMethod("idle", Connection.class)
+						.getDeclaringClass() != Listener.class;
+			} catch (NoSuchMethodException ex) {
+				return true;
+			}
+		}
+	};
+
 	void notifyIdle() {
 		Listener[] listeners = this.listeners;
 		for (int i = 0, n = listeners.length; i < n; i++) {
@@ -347,6 +839,114 @@ public class Connection {
 		}
 	}
 
+	private ReliableUdp reliableUdp() {
+		ReliableUdp reliableUdp = this.reliableUdp;
+		if (reliableUdp == null) {
+			synchronized (udpDelivered) {
+				reliableUdp = this.reliableUdp;
+				if (reliableUdp == null)
+					reliableUdp = this.reliableUdp = new ReliableUdp();
+			}
+		}
+		return reliableUdp;
+	}
+
+	UdpFragments udpFragments() {
+		UdpFragments udpFragments = this.udpFragments;
+		if (udpFragments == null)
+			this.udpFragments = udpFragments = new UdpFragments();
+		return udpFragments;
+	}
+
+	/**
+	 * Called on the network thread for each object received over UDP.
+	 * 
+	 * @return true if an acknowledgement has to be sent with
+	 *         {@link #sendUdpAck()}.
+	 */
+	boolean receiveUDP(Object object) {
+		if (!(object instanceof Reliable)) {
+			notifyReceived(object);
+			return false;
+		}
+		boolean ack;
+		try {
+			ack = reliableUdp().receive(this, (Reliable) object, udpAddress(),
+					udpDelivered);
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to send UDP with connection: " + this,
+						ex);
+			close();
+			return false;
+		} catch (KryoNetException ex) {
+			if (ERROR)
+				error("kryonet", "Error reading UDP from connection: " + this,
+						ex);
+			close();
+			return false;
+		}
+		for (int i = 0, n = udpDelivered.size(); i < n; i++)
+			notifyReceived(udpDelivered.get(i));
+		udpDelivered.clear();
+		return ack;
+	}
+
+	/**
+	 * Acknowledges the reliable UDP objects received, unless an object sent
+	 * since did. Called on the network thread.
+	 */
+	void sendUdpAck() {
+		ReliableUdp reliableUdp = this.reliableUdp;
+		if (reliableUdp == null)
+			return;
+		try {
+			SocketAddress address = udpAddress();
+			if (address != null)
+				reliableUdp.sendAck(this, address);
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to send UDP with connection: " + this,
+						ex);
+			close();
+		} catch (KryoNetException ex) {
+			if (ERROR)
+				error("kryonet", "Unable to send UDP with connection: " + this,
+						ex);
+			close();
+		}
+	}
+
+	/**
+	 * Resends the reliable UDP objects that were not acknowledged in time.
+	 * Called on the network thread for each update while objects are not
+	 * acknowledged.
+	 * 
+	 * @return The time the next object is due to be resent, or <code>0</code>.
+	 */
+	long resendUDP(long time) {
+		ReliableUdp reliableUdp = this.reliableUdp;
+		if (reliableUdp == null || !isConnected)
+			return 0;
+		try {
+			SocketAddress address = udpAddress();
+			if (address == null)
+				return 0;
+			return reliableUdp.resend(this, address, time, tcp.timeoutMillis);
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to send UDP with connection: " + this,
+						ex);
+			close();
+		} catch (KryoNetException ex) {
+			if (ERROR)
+				error("kryonet", "Unable to send UDP with connection: " + this,
+						ex);
+			close();
+		}
+		return 0;
+	}
+
 	void notifyReceived(Object object) {
 		if (object instanceof Ping) {
 			Ping ping = (Ping) object;
@@ -430,21 +1030,80 @@ public class Connection {
 	 * socket, if any.
 	 */
 	public int getTcpWriteBufferSize() {
-		return tcp.writeBuffer.position();
+		return tcp.getWriteSize();
+	}
+
+	/**
+	 * Returns false while more bytes are waiting to be written to the TCP
+	 * socket than the high watermark of the write queue, until they are
+	 * drained to its low watermark. Senders should then hold back objects
+	 * they can send later. Always true without a write queue.
+	 * 
+	 * @see Server#setWriteQueue(int, int)
+	 * @see Client#setWriteQueue(int, int)
+	 * @see Listener#writabilityChanged(Connection, boolean)
+	 */
+	public boolean isWritable() {
+		return tcp.isWritable();
+	}
+
+	/**
+	 * Sets the maximum number of serialized bytes per chunk of the objects
+	 * sent with {@link #sendTCPChunked(Object)}. A chunk must fit into the
+	 * object buffer of the remote end, including 8 bytes of headers, and
+	 * takes at most half of the write buffer. Defaults to <code>1024</code>.
+	 */
+	public void setChunkSizeTCP(int chunkSize) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException(
+					"chunkSize must be > 0: " + chunkSize);
+		tcp.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Sets the maximum size of the datagrams
+	 * {@linkplain #sendUDP(Object, boolean) packed} with more than one object.
+	 * Larger objects are sent in fragments of this size, which the remote end
+	 * reassembles. If a fragment is lost, the whole object is lost, but an
+	 * object with a reliable {@linkplain #sendUDP(Object, UdpDelivery)
+	 * delivery} is resent. Should be below the MTU of the path to the remote
+	 * end, so the datagrams are not fragmented by IP, e.g. <code>1200</code>.
+	 * Defaults to the object buffer size, so no object is sent in fragments
+	 * unless the packet size is lowered. Remote ends of versions that do not
+	 * reassemble fragments cannot receive objects larger than a lowered
+	 * packet size.
+	 */
+	public void setPacketSizeUDP(int packetSize) {
+		if (packetSize < 64)
+			throw new IllegalArgumentException(
+					"packetSize must be >= 64: " + packetSize);
+		packetSizeUDP = packetSize;
+	}
+
+	/**
+	 * Sets the maximum size of a serialized object sent or received in
+	 * chunks. A larger chunked object received closes the connection.
+	 * Defaults to 16 MB.
+	 */
+	public void setMaxChunkedSizeTCP(int maxChunkedSize) {
+		if (maxChunkedSize <= 0)
+			throw new IllegalArgumentException(
+					"maxChunkedSize must be > 0: " + maxChunkedSize);
+		tcp.maxChunkedSize = maxChunkedSize;
 	}
 
 	/**
 	 * @see #setIdleThreshold(float)
 	 */
 	public boolean isIdle() {
-		return tcp.writeBuffer.position()
-				/ (float) tcp.writeBuffer.capacity() < tcp.idleThreshold;
+		return tcp.getWriteUtilization() < tcp.idleThreshold;
 	}
 
 	/**
 	 * If the percent of the TCP write buffer that is filled is less than the
 	 * specified threshold, {@link Listener#idle(Connection)} will be called for
-	 * each network thread update. Default is <code>0.1</code>.
+	 * each network thread update. With a write queue, the percent is relative
+	 * to its high watermark. Default is <code>0.1</code>.
 	 */
 	public void setIdleThreshold(float idleThreshold) {
 		tcp.idleThreshold = idleThreshold;
@@ -466,6 +1125,11 @@ public class Connection {
 		this.isConnected = isConnected;
 		if (isConnected && name == null)
 			name = "Connection " + id;
+		if (isConnected)
+			writable = true;
+		reliableUdp = null;
+		udpPacker = null;
+		udpFragments = null;
 	}
 
 	public Object getArbitraryData() {
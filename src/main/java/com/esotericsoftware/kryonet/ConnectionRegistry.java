@@ -0,0 +1,92 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import com.esotericsoftware.kryo.util.IntMap;
+
+/**
+ * The connections of a server or worker, indexed by ID. Adding, removing and
+ * looking up a connection takes constant time. Iteration uses an array
+ * snapshot that is rebuilt the first time it is requested after a change, so
+ * any number of changes in a row (e.g. many clients disconnecting at once)
+ * costs a single copy and iterating never locks.
+ */
+class ConnectionRegistry {
+	private static final Connection[] EMPTY = {};
+
+	private final IntMap<Connection> connections = new IntMap<>();
+	private volatile Connection[] snapshot = EMPTY;
+
+	void add(Connection connection) {
+		synchronized (connections) {
+			connections.put(connection.id, connection);
+			snapshot = null;
+		}
+	}
+
+	/**
+	 * Removes the connection if it is the one registered with its ID.
+	 * 
+	 * @return true if the connection was removed.
+	 */
+	boolean remove(Connection connection) {
+		synchronized (connections) {
+			if (connections.get(connection.id) != connection)
+				return false;
+			connections.remove(connection.id);
+			snapshot = null;
+			return true;
+		}
+	}
+
+	/** @return The connection with the ID or null. */
+	Connection get(int id) {
+		synchronized (connections) {
+			return connections.get(id);
+		}
+	}
+
+	int size() {
+		synchronized (connections) {
+			return connections.size;
+		}
+	}
+
+	/**
+	 * Returns the current connections. The array returned must not be
+	 * modified.
+	 */
+	Connection[] toArray() {
+		Connection[] snapshot = this.snapshot;
+		if (snapshot != null)
+			return snapshot;
+		synchronized (connections) {
+			snapshot = this.snapshot;
+			if (snapshot == null) {
+				snapshot = new Connection[connections.size];
+				int i = 0;
+				for (Connection connection : connections.values())
+					snapshot[i++] = connection;
+				this.snapshot = snapshot;
+			}
+			return snapshot;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+package com.esotericsoftware.kryonet;
+
+import static com.esotericsoftware.minlog.Log.DEBUG;
+import static com.esotericsoftware.minlog.Log.ERROR;
+import static com.esotericsoftware.minlog.Log.TRACE;
+import static com.esotericsoftware.minlog.Log.debug;
+import static com.esotericsoftware.minlog.Log.error;
+import static com.esotericsoftware.minlog.Log.trace;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The frames read from a TCP connection that wait to be deserialized by an
+ * executor instead of the selector thread, see
+ * {@link Server#setDecodeExecutor(Executor)}. The selector thread copies each
+ * frame to a buffer from a {@link BufferPool} and adds it without locking. At
+ * most one task of the executor decodes the frames of a connection at a time,
+ * so the listeners receive them in order. The listeners are notified of the
+ * disconnect by a task too, after the objects received before, so no object
+ * is received after the connection disconnected.
+ */
+class DecodeQueue implements Runnable {
+	/**
+	 * The maximum number of frames decoded by one task before the executor
+	 * runs the tasks of the other connections.
+	 */
+	static final int BATCH = 64;
+
+	/**
+	 * Returned by {@link TcpConnection#readObject(Connection)} for a frame
+	 * that was queued to be decoded.
+	 */
+	static final Object QUEUED = new Object();
+
+	private final Connection connection;
+	private final Executor executor;
+	private final BufferPool pool;
+	private final ConcurrentLinkedQueue<ByteBuffer> frames = new ConcurrentLinkedQueue<>();
+	/** True while a task is going to decode the queue. */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	/** True once the connection disconnected. */
+	private volatile boolean disconnected;
+	/** True once the listeners were notified of the disconnect. */
+	private final AtomicBoolean notifiedDisconnected = new AtomicBoolean();
+
+	DecodeQueue(Connection connection, Executor executor, BufferPool pool) {
+		this.connection = connection;
+		this.executor = executor;
+		this.pool = pool;
+	}
+
+	/**
+	 * Copies length bytes of the buffer to a pooled buffer and queues it. Only
+	 * called by the selector thread.
+	 */
+	void add(ByteBuffer buffer, int length) {
+		ByteBuffer frame = pool.obtain(length);
+		int limit = buffer.limit();
+		buffer.limit(buffer.position() + length);
+		frame.put(buffer);
+		buffer.limit(limit);
+		frame.flip();
+		addFrame(frame);
+	}
+
+	/**
+	 * Queues a buffer that is no longer used by the selector thread, such as
+	 * a completely received chunked object. Frames added after the
+	 * connection disconnected are discarded.
+	 */
+	void addFrame(ByteBuffer frame) {
+		if (disconnected) {
+			pool.free(frame);
+			return;
+		}
+		frames.add(frame);
+		if (scheduled.compareAndSet(false, true))
+			executor.execute(this);
+	}
+
+	@Override
+	public void run() {
+		for (int i = 0; i < BATCH; i++) {
+			ByteBuffer frame = frames.poll();
+			if (frame == null) {
+				scheduled.set(false);
+				// Checked after the flag was cleared, see disconnected().
+				if (disconnected)
+					notifyDisconnected();
+				// A frame queued before the flag was cleared must not be
+				// missed.
+				if (frames.isEmpty() || !scheduled.compareAndSet(false, true))
+					return;
+				continue;
+			}
+			try {
+				// The frames queued before the connection was closed are
+				// still received, unless the listeners were notified of the
+				// disconnect by a task that ran meanwhile.
+				if (!notifiedDisconnected.get())
+					decode(frame);
+			} catch (Throwable ex) {
+				// Otherwise the queue would never be decoded again.
+				if (ERROR)
+					error("kryonet", "Error decoding TCP from connection: "
+							+ connection, ex);
+				connection.close();
+			} finally {
+				pool.free(frame);
+			}
+		}
+		// Let the executor run the tasks of other connections first.
+		executor.execute(this);
+	}
+
+	private void decode(ByteBuffer frame) {
+		Object object;
+		try {
+			object = connection.tcp.deserialize(connection, frame,
+					frame.remaining());
+		} catch (KryoNetException ex) {
+			if (ERROR)
+				error("kryonet", "Error reading TCP from connection: "
+						+ connection, ex);
+			connection.close();
+			return;
+		}
+		if (DEBUG) {
+			String objectString = object == null ? "null"
+					: object.getClass().getSimpleName();
+			if (!(object instanceof FrameworkMessage)) {
+				debug("kryonet",
+						connection + " received TCP: " + objectString);
+			} else if (TRACE) {
+				trace("kryonet",
+						connection + " received TCP: " + objectString);
+			}
+		}
+		connection.notifyReceived(object);
+	}
+
+	/**
+	 * Notifies the listeners that the connection disconnected, once the frames
+	 * queued before were decoded. Frames added after the connection was
+	 * closed are discarded. This method is thread-safe.
+	 */
+	void disconnected() {
+		disconnected = true;
+		// Otherwise the running task sees the flag after clearing its own.
+		if (!scheduled.compareAndSet(false, true))
+			return;
+		try {
+			executor.execute(this);
+		} catch (RejectedExecutionException ex) {
+			if (DEBUG)
+				debug("kryonet", "Decode executor rejected the disconnect of: "
+						+ connection, ex);
+			notifyDisconnected();
+		}
+	}
+
+	private void notifyDisconnected() {
+		if (!notifiedDisconnected.compareAndSet(false, true))
+			return;
+		try {
+			connection.notifyDisconnected();
+		} catch (Throwable ex) {
+			if (ERROR)
+				error("kryonet", "Error notifying listeners of connection: "
+						+ connection, ex);
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+package com.esotericsoftware.kryonet;
+
+import static com.esotericsoftware.minlog.Log.DEBUG;
+import static com.esotericsoftware.minlog.Log.ERROR;
+import static com.esotericsoftware.minlog.Log.debug;
+import static com.esotericsoftware.minlog.Log.error;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A ring of preallocated slots that the threads notifying a listener write
+ * the events to, and a single thread reads them from to notify the listener,
+ * see {@link Listener.RingBufferListener}. No objects are allocated per
+ * event. Writers claim the sequence of a slot with an atomic increment and
+ * publish the slot by writing its sequence. When the ring is full they wait
+ * for the reader to free a slot.
+ */
+class EventRing implements Runnable {
+	static final int CONNECTED = 0, DISCONNECTED = 1, RECEIVED = 2, IDLE = 3,
+			WRITABILITY_CHANGED = 4;
+	static private final String[] TYPE_NAMES = { "connected", "disconnected",
+			"received", "idle", "writabilityChanged" };
+	/** The number of times the reader checks for an event before parking. */
+	static final int SPINS = 1000;
+
+	private final Listener listener;
+	private final Slot[] slots;
+	private final int mask;
+	/** The sequence of the next slot to claim. */
+	private final AtomicLong claimed = new AtomicLong();
+	/** The sequence of the next slot to read, earlier slots are free. */
+	private volatile long read;
+	/** True while the reader is about to park or parked. */
+	private volatile boolean waiting;
+	private volatile boolean running = true;
+	private final Thread thread;
+
+	/**
+	 * @param size
+	 *            The number of slots, a power of two.
+	 */
+	EventRing(Listener listener, int size, String threadName) {
+		if (size <= 0 || (size & size - 1) != 0)
+			throw new IllegalArgumentException(
+					"size must be a power of two: " + size);
+		this.listener = listener;
+		slots = new Slot[size];
+		for (int i = 0; i < size; i++)
+			slots[i] = new Slot();
+		mask = size - 1;
+		thread = new Thread(this, threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Writes the event to the next slot. Once the ring is stopped, the event
+	 * is discarded instead. This method is thread-safe.
+	 */
+	void publish(int type, Connection connection, Object object,
+			boolean writable) {
+		if (!running) {
+			discarded(type, connection);
+			return;
+		}
+		long sequence = claimed.getAndIncrement();
+		// Wait for the reader to free the slot.
+		for (int i = 0; sequence - read >= slots.length; i++) {
+			if (!running) {
+				discarded(type, connection);
+				return;
+			}
+			if (i < SPINS)
+				Thread.yield();
+			else
+				LockSupport.parkNanos(1000);
+		}
+		Slot slot = slots[(int) sequence & mask];
+		slot.type = type;
+		slot.connection = connection;
+		slot.object = object;
+		slot.writable = writable;
+		slot.sequence = sequence;
+		if (waiting)
+			LockSupport.unpark(thread);
+	}
+
+	@Override
+	public void run() {
+		long sequence = 0;
+		int spins = 0;
+		while (running) {
+			Slot slot = slots[(int) sequence & mask];
+			if (slot.sequence != sequence) {
+				if (spins++ < SPINS)
+					continue;
+				waiting = true;
+				// An event published before the flag was set must not be
+				// missed.
+				if (slot.sequence != sequence && running)
+					LockSupport.park(this);
+				waiting = false;
+				continue;
+			}
+			spins = 0;
+			int type = slot.type;
+			Connection connection = slot.connection;
+			Object object = slot.object;
+			boolean writable = slot.writable;
+			// Don't keep the objects reachable until the slot is reused.
+			slot.connection = null;
+			slot.object = null;
+			read = ++sequence;
+			try {
+				notify(type, connection, object, writable);
+			} catch (RuntimeException ex) {
+				if (ERROR)
+					error("kryonet", "Error notifying listener of "
+							+ connection, ex);
+			}
+		}
+	}
+
+	private void notify(int type, Connection connection, Object object,
+			boolean writable) {
+		switch (type) {
+		case CONNECTED:
+			listener.connected(connection);
+			break;
+		case DISCONNECTED:
+			listener.disconnected(connection);
+			break;
+		case RECEIVED:
+			listener.received(connection, object);
+			break;
+		case IDLE:
+			listener.idle(connection);
+			break;
+		case WRITABILITY_CHANGED:
+			listener.writabilityChanged(connection, writable);
+			break;
+		}
+	}
+
+	private void discarded(int type, Connection connection) {
+		if (DEBUG)
+			debug("kryonet", "Listener stopped, discarded " + TYPE_NAMES[type]
+					+ " event of " + connection);
+	}
+
+	/** Stops the reader thread, the events not read yet are discarded. */
+	void stop() {
+		running = false;
+		LockSupport.unpark(thread);
+	}
+
+	static private class Slot {
+		/** The sequence of the event in the slot, written last. */
+		volatile long sequence = -1;
+		int type;
+		Connection connection;
+		Object object;
+		boolean writable;
+	}
+}
@@ -0,0 +1,54 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Receives the bytes the remote end sends with
+ * {@link Connection#sendFile(Object, FileChannel, long, long)}. The methods
+ * are called on the network thread.
+ * 
+ * @see Connection#setFileReceiver(FileReceiver)
+ */
+public interface FileReceiver {
+	/**
+	 * Called when the remote end starts sending a file.
+	 * 
+	 * @param descriptor
+	 *            The object sent along with the file, e.g. its name. May be
+	 *            <code>null</code>.
+	 * @param length
+	 *            The number of bytes that will be received.
+	 * @return The channel the bytes are written to, starting at its current
+	 *         position, or <code>null</code> to discard them.
+	 */
+	public FileChannel open(Connection connection, Object descriptor,
+			long length) throws IOException;
+
+	/**
+	 * Called once all bytes of the file were written to the channel returned
+	 * by {@link #open(Connection, Object, long)}. The channel is not closed.
+	 * If the connection is closed before, this method is not called.
+	 */
+	public void received(Connection connection, Object descriptor,
+			FileChannel channel) throws IOException;
+}
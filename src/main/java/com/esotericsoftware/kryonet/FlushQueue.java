@@ -0,0 +1,138 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static com.esotericsoftware.minlog.Log.DEBUG;
+import static com.esotericsoftware.minlog.Log.debug;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The connections of a selector whose queued bytes are to be written by the
+ * thread updating the selector, either as soon as possible or once they
+ * {@linkplain Connection#setLingerTCP(int) lingered}. Connections that do not
+ * linger are written by the next flush, regardless of lingering connections.
+ * The thread updating the selector shortens its select timeout to the
+ * earliest linger time and then writes the queued bytes of the due
+ * connections.
+ */
+class FlushQueue {
+	private final Selector selector;
+	/** Connections to write as soon as possible. */
+	private final ConcurrentLinkedQueue<Connection> ready = new ConcurrentLinkedQueue<>();
+	/** Lingering connections not yet moved to {@link #due}. */
+	private final ConcurrentLinkedQueue<Entry> added = new ConcurrentLinkedQueue<>();
+	/**
+	 * Lingering connections ordered by their flush time, only accessed by the
+	 * thread updating the selector.
+	 */
+	private final PriorityQueue<Entry> due = new PriorityQueue<>();
+
+	FlushQueue(Selector selector) {
+		this.selector = selector;
+	}
+
+	/**
+	 * Adds a connection and wakes up the selector, so it flushes or selects
+	 * with the new timeout. This method is thread-safe.
+	 * 
+	 * @param flushTime
+	 *            When the connection's queued bytes are written, or
+	 *            <code>0</code> to write them as soon as possible.
+	 */
+	void add(Connection connection, long flushTime) {
+		if (flushTime == 0)
+			ready.add(connection);
+		else
+			added.add(new Entry(connection, flushTime));
+		selector.wakeup();
+	}
+
+	/**
+	 * Returns the timeout to select with so lingering connections are flushed
+	 * in time, <code>0</code> to select without waiting.
+	 */
+	int selectTimeout(int timeout) {
+		if (timeout <= 0)
+			return timeout;
+		if (!ready.isEmpty())
+			return 0;
+		moveAdded();
+		Entry entry = due.peek();
+		if (entry == null)
+			return timeout;
+		long delay = entry.flushTime - System.currentTimeMillis();
+		if (delay <= 0)
+			return 0;
+		return (int) Math.min(timeout, delay);
+	}
+
+	/**
+	 * Writes the queued bytes of the connections that do not linger and of
+	 * those whose linger time passed.
+	 */
+	void flush(long time) {
+		Connection connection;
+		while ((connection = ready.poll()) != null)
+			lingered(connection, time);
+		moveAdded();
+		Entry entry;
+		while ((entry = due.peek()) != null && entry.flushTime <= time) {
+			due.poll();
+			lingered(entry.connection, time);
+		}
+	}
+
+	private void moveAdded() {
+		Entry entry;
+		while ((entry = added.poll()) != null)
+			due.add(entry);
+	}
+
+	private void lingered(Connection connection, long time) {
+		try {
+			connection.tcp.lingered(connection, time);
+			connection.notifyWritabilityChanged();
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to flush TCP with connection: "
+						+ connection, ex);
+			connection.close();
+		}
+	}
+
+	static private class Entry implements Comparable<Entry> {
+		final Connection connection;
+		final long flushTime;
+
+		Entry(Connection connection, long flushTime) {
+			this.connection = connection;
+			this.flushTime = flushTime;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			return Long.compare(flushTime, other.flushTime);
+		}
+	}
+}
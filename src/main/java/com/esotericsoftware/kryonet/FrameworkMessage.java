@@ -57,6 +57,23 @@ public interface FrameworkMessage {
 	class DiscoverHost implements FrameworkMessage {
 	}
 
+	/**
+	 * Internal message that wraps an object sent over UDP with a
+	 * {@link UdpDelivery} other than {@link UdpDelivery#UNRELIABLE}, and
+	 * acknowledges the reliable objects received.
+	 */
+	class Reliable implements FrameworkMessage {
+		/** The {@link UdpDelivery} ordinal, or -1 for an acknowledgement. */
+		public byte delivery;
+		public int sequence, order;
+		/** The latest sequence received, if any. */
+		public boolean hasAck;
+		public int ack;
+		/** Bit n is set if the sequence <code>ack - n - 1</code> was received. */
+		public int ackBits;
+		public Object object;
+	}
+
 	/**
 	 * Internal message to determine round trip time.
 	 */
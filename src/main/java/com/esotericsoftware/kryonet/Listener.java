@@ -19,8 +19,14 @@
 
 package com.esotericsoftware.kryonet;
 
+import static com.esotericsoftware.minlog.Log.ERROR;
+import static com.esotericsoftware.minlog.Log.error;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -36,8 +42,10 @@ public interface Listener {
 	 * Called when the remote end has been connected. This will be invoked
 	 * before any objects are received by {@link #received(Connection, Object)}.
 	 * This will be invoked on the same thread as {@link Client#update(int)} and
-	 * {@link Server#update(int)}. This method should not block for long periods
-	 * as other network activity will not be processed until it returns.
+	 * {@link Server#update(int)} (or the worker thread of the connection, see
+	 * {@link Server#setWorkerCount(int)}). This method should not block for
+	 * long periods as other network activity will not be processed until it
+	 * returns.
 	 */
 	public default void connected(Connection connection) {
 	}
@@ -52,9 +60,10 @@ public interface Listener {
 	/**
 	 * Called when an object has been received from the remote end of the
 	 * connection. This will be invoked on the same thread as
-	 * {@link Client#update(int)} and {@link Server#update(int)}. This method
-	 * should not block for long periods as other network activity will not be
-	 * processed until it returns.
+	 * {@link Client#update(int)} and {@link Server#update(int)} (or the worker
+	 * thread of the connection, see {@link Server#setWorkerCount(int)}). This
+	 * method should not block for long periods as other network activity will
+	 * not be processed until it returns.
 	 */
 	public default void received(Connection connection, Object object) {
 	}
@@ -66,6 +75,16 @@ public interface Listener {
 	public default void idle(Connection connection) {
 	}
 
+	/**
+	 * Called when the connection became unwritable or writable again, see
+	 * {@link Connection#isWritable()}. Only called for connections using a
+	 * write queue. There is no guarantee as to what thread will invoke this
+	 * method.
+	 */
+	public default void writabilityChanged(Connection connection,
+			boolean writable) {
+	}
+
     static Listener connected(Consumer<Connection> listener) {
         return new Listener() {
             @Override
@@ -140,19 +159,29 @@ public interface Listener {
 	 * A type listener for KryoNet for conveniently taking care of received
 	 * objects.
 	 * <p>
-	 * Note that this class uses a HashMap lookup, so is not as efficient as
-	 * writing a series of simple "instanceof" statements.
+	 * An object is passed to the handler of its class, or else to the handler
+	 * of its nearest superclass, or else of an interface it implements. The
+	 * handler of each class is resolved once and cached with a
+	 * {@link ClassValue}, so dispatching an object costs a single lookup.
+	 * Adding or removing a handler discards the cache. This class is
+	 * thread-safe.
 	 * <p>
 	 * To add a handler for a specific type use
 	 * {@link #addTypeHandler(Class, BiConsumer)}.
 	 */
 	static public class TypeListener implements Listener {
+		@SuppressWarnings("rawtypes")
+		static private final BiConsumer NONE = (connection, object) -> {
+		};
 
 		/**
 		 * All type handlers.
 		 */
 		@SuppressWarnings("rawtypes")
 		private final HashMap<Class<?>, BiConsumer> listeners = new HashMap<>();
+		/** The handler of each received class. */
+		@SuppressWarnings("rawtypes")
+		private volatile ClassValue<BiConsumer> handlers = newHandlers();
 
 		public TypeListener() {
 		}
@@ -160,9 +189,7 @@ public interface Listener {
 		@SuppressWarnings("unchecked")
 		@Override
 		public void received(Connection con, Object msg) {
-			if (listeners.containsKey(msg.getClass())) {
-				listeners.get(msg.getClass()).accept(con, msg);
-			}
+			handlers.get(msg.getClass()).accept(con, msg);
 		}
 
 		/**
@@ -173,25 +200,136 @@ public interface Listener {
 		 * @param listener
 		 *            The listener.
 		 */
-		public <T> void addTypeHandler(Class<T> clazz,
+		public synchronized <T> void addTypeHandler(Class<T> clazz,
 				BiConsumer<? super Connection, ? super T> listener) {
 			listeners.put(clazz, listener);
+			handlers = newHandlers();
 		}
 
-		public <T> void removeTypeHandler(Class<T> clazz) {
+		public synchronized <T> void removeTypeHandler(Class<T> clazz) {
 			listeners.remove(clazz);
+			handlers = newHandlers();
 		}
 
-		public int size() {
+		public synchronized int size() {
 			return listeners.size();
 		}
 
-		public void clear() {
+		public synchronized void clear() {
 			listeners.clear();
+			handlers = newHandlers();
+		}
+
+		/** Resolves the handlers from a copy of the current ones. */
+		@SuppressWarnings("rawtypes")
+		private ClassValue<BiConsumer> newHandlers() {
+			final HashMap<Class<?>, BiConsumer> listeners = new HashMap<>(
+					this.listeners);
+			return new ClassValue<BiConsumer>() {
+				@Override
+				protected BiConsumer computeValue(Class<?> type) {
+					for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+						BiConsumer listener = listeners.get(c);
+						if (listener != null)
+							return listener;
+					}
+					for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+						BiConsumer listener = resolveInterfaces(listeners,
+								c.getInterfaces());
+						if (listener != null)
+							return listener;
+					}
+					return NONE;
+				}
+			};
+		}
+
+		@SuppressWarnings("rawtypes")
+		static private BiConsumer resolveInterfaces(
+				HashMap<Class<?>, BiConsumer> listeners,
+				Class<?>[] interfaces) {
+			for (Class<?> type : interfaces) {
+				BiConsumer listener = listeners.get(type);
+				if (listener != null)
+					return listener;
+			}
+			for (Class<?> type : interfaces) {
+				BiConsumer listener = resolveInterfaces(listeners,
+						type.getInterfaces());
+				if (listener != null)
+					return listener;
+			}
+			return null;
 		}
 
 	}
 
+	/**
+	 * Routes received objects by type to lanes, each processing its objects
+	 * on its own thread pool, so slow handlers, e.g. for admin commands, don't
+	 * delay cheap ones, e.g. for chat. Each lane processes the objects of a
+	 * connection in order, like an {@link OrderedListener}, but objects of
+	 * different lanes may be processed in any order. The lane of an object is
+	 * resolved like the handler of a {@link TypeListener}. Objects of types
+	 * without a lane are ignored.
+	 * <p>
+	 * To add a lane use {@link #addLane(ExecutorService)}.
+	 */
+	static public class RoutingListener implements Listener {
+		private final TypeListener router = new TypeListener();
+		private volatile Lane[] lanes = {};
+
+		/**
+		 * Adds a lane whose handlers are called by the specified
+		 * <code>threadPool</code>, which may be shared with other lanes.
+		 */
+		public synchronized Lane addLane(ExecutorService threadPool) {
+			Lane lane = new Lane(new TypeListener(), threadPool);
+			Lane[] lanes = Arrays.copyOf(this.lanes, this.lanes.length + 1);
+			lanes[lanes.length - 1] = lane;
+			this.lanes = lanes;
+			return lane;
+		}
+
+		@Override
+		public void received(Connection connection, Object object) {
+			router.received(connection, object);
+		}
+
+		@Override
+		public void disconnected(Connection connection) {
+			// Lets the lanes discard the connection once its objects were
+			// processed.
+			Lane[] lanes = this.lanes;
+			for (int i = 0, n = lanes.length; i < n; i++)
+				lanes[i].disconnected(connection);
+		}
+
+		/** The types processed on one thread pool. */
+		public class Lane extends OrderedListener {
+			private final TypeListener handlers;
+
+			Lane(TypeListener handlers, ExecutorService threadPool) {
+				super(handlers, threadPool);
+				this.handlers = handlers;
+			}
+
+			/**
+			 * Routes the objects of a type to this lane and adds their
+			 * handler. A type routed to another lane before is moved to this
+			 * lane.
+			 *
+			 * @return This lane.
+			 */
+			public <T> Lane addTypeHandler(Class<T> clazz,
+					BiConsumer<? super Connection, ? super T> listener) {
+				handlers.addTypeHandler(clazz, listener);
+				router.addTypeHandler(clazz, this::received);
+				return this;
+			}
+		}
+	}
+
 	/**
 	 * Wraps a listener and queues notifications as {@link Runnable runnables}.
 	 * This allows the runnables to be processed on a different thread,
@@ -208,7 +346,7 @@ public interface Listener {
 
 		@Override
 		public void connected(final Connection connection) {
-			queue(new Runnable() {
+			queue(connection, new Runnable() {
 				@Override
 				public void run() {
 					listener.connected(connection);
@@ -218,7 +356,7 @@ public interface Listener {
 
 		@Override
 		public void disconnected(final Connection connection) {
-			queue(new Runnable() {
+			queue(connection, new Runnable() {
 				@Override
 				public void run() {
 					listener.disconnected(connection);
@@ -228,7 +366,7 @@ public interface Listener {
 
 		@Override
 		public void received(final Connection connection, final Object object) {
-			queue(new Runnable() {
+			queue(connection, new Runnable() {
 				@Override
 				public void run() {
 					listener.received(connection, object);
@@ -238,7 +376,7 @@ public interface Listener {
 
 		@Override
 		public void idle(final Connection connection) {
-			queue(new Runnable() {
+			queue(connection, new Runnable() {
 				@Override
 				public void run() {
 					listener.idle(connection);
@@ -246,7 +384,26 @@ public interface Listener {
 			});
 		}
 
+		@Override
+		public void writabilityChanged(final Connection connection,
+				final boolean writable) {
+			queue(connection, new Runnable() {
+				@Override
+				public void run() {
+					listener.writabilityChanged(connection, writable);
+				}
+			});
+		}
+
 		abstract protected void queue(Runnable runnable);
+
+		/**
+		 * Queues the notification of an event of the connection. Calls
+		 * {@link #queue(Runnable)} by default.
+		 */
+		protected void queue(Connection connection, Runnable runnable) {
+			queue(runnable);
+		}
 	}
 
 	/**
@@ -279,6 +436,207 @@ public interface Listener {
 		}
 	}
 
+	/**
+	 * Wraps a listener and processes notification events on the threads of a
+	 * pool, while the events of each connection are processed in the order
+	 * they occurred. At most one thread processes the events of a connection
+	 * at a time, so a connection whose events are slow to process only delays
+	 * its own events, and the events of different connections are processed
+	 * in parallel.
+	 */
+	static public class OrderedListener extends QueuedListener {
+		/**
+		 * The maximum number of events of a connection processed before the
+		 * pool processes the events of other connections.
+		 */
+		static final int BATCH = 64;
+
+		protected final ExecutorService threadPool;
+		private final ConcurrentHashMap<Connection, Events> events = new ConcurrentHashMap<>();
+
+		/**
+		 * Creates a thread for each available processor to process
+		 * notification events.
+		 */
+		public OrderedListener(Listener listener) {
+			this(listener, Executors.newFixedThreadPool(
+					Runtime.getRuntime().availableProcessors()));
+		}
+
+		/**
+		 * Uses the specified <code>threadPool</code> to process notification
+		 * events.
+		 */
+		public OrderedListener(Listener listener, ExecutorService threadPool) {
+			super(listener);
+			if (threadPool == null)
+				throw new NullPointerException("threadPool cannot be null.");
+			this.threadPool = threadPool;
+		}
+
+		@Override
+		public void queue(Runnable runnable) {
+			threadPool.execute(runnable);
+		}
+
+		@Override
+		protected void queue(Connection connection, Runnable runnable) {
+			while (true) {
+				Events events = this.events.get(connection);
+				if (events == null)
+					events = this.events.computeIfAbsent(connection,
+							Events::new);
+				if (events.add(runnable))
+					return;
+				// The events were just removed, a new one is added.
+			}
+		}
+
+		/**
+		 * The events of a connection waiting to be processed. Removed once
+		 * the connection is disconnected and its events were processed.
+		 */
+		private class Events implements Runnable {
+			private final Connection connection;
+			private final ArrayDeque<Runnable> runnables = new ArrayDeque<>();
+			/** True while a thread is going to process the events. */
+			private boolean scheduled;
+			private boolean removed;
+
+			Events(Connection connection) {
+				this.connection = connection;
+			}
+
+			/** @return false if the events were removed. */
+			boolean add(Runnable runnable) {
+				synchronized (this) {
+					if (removed)
+						return false;
+					runnables.add(runnable);
+					if (scheduled)
+						return true;
+					scheduled = true;
+				}
+				threadPool.execute(this);
+				return true;
+			}
+
+			@Override
+			public void run() {
+				for (int i = 0; i < BATCH; i++) {
+					Runnable runnable;
+					synchronized (this) {
+						runnable = runnables.poll();
+						if (runnable == null) {
+							scheduled = false;
+							if (!connection.isConnected()) {
+								removed = true;
+								events.remove(connection, this);
+							}
+							return;
+						}
+					}
+					try {
+						runnable.run();
+					} catch (RuntimeException ex) {
+						// Otherwise the events would never be processed again.
+						if (ERROR)
+							error("kryonet", "Error notifying listener of "
+									+ connection, ex);
+					}
+				}
+				// Let the pool process the events of other connections first.
+				threadPool.execute(this);
+			}
+		}
+	}
+
+	/**
+	 * Wraps a listener and processes notification events on separate
+	 * threads, like a {@link ThreadedListener}, without allocating objects
+	 * for each event. The events are written to rings of preallocated slots,
+	 * each read by its own thread. The events of a connection always go to
+	 * the same ring, so they are processed in order. When a ring is full, the
+	 * thread notifying this listener waits until a slot is free.
+	 * <p>
+	 * Events that are still in a ring or waiting for a free slot when the
+	 * listener is {@linkplain #stop() stopped} are lost, including
+	 * {@link #disconnected(Connection)} events.
+	 */
+	static public class RingBufferListener implements Listener {
+		private final EventRing[] rings;
+
+		/** Uses a single thread and a ring of 1024 slots. */
+		public RingBufferListener(Listener listener) {
+			this(listener, 1024, 1);
+		}
+
+		/**
+		 * @param size
+		 *            The number of slots of each ring, a power of two.
+		 * @param threads
+		 *            The number of rings and threads processing them.
+		 */
+		public RingBufferListener(Listener listener, int size, int threads) {
+			if (listener == null)
+				throw new NullPointerException("listener cannot be null.");
+			if (threads <= 0)
+				throw new IllegalArgumentException(
+						"threads must be > 0: " + threads);
+			rings = new EventRing[threads];
+			for (int i = 0; i < threads; i++)
+				rings[i] = new EventRing(listener, size,
+						"RingBufferListener " + i);
+		}
+
+		private EventRing ring(Connection connection) {
+			EventRing[] rings = this.rings;
+			if (rings.length == 1)
+				return rings[0];
+			return rings[(connection.getID() & Integer.MAX_VALUE)
+					% rings.length];
+		}
+
+		@Override
+		public void connected(Connection connection) {
+			ring(connection).publish(EventRing.CONNECTED, connection, null,
+					false);
+		}
+
+		@Override
+		public void disconnected(Connection connection) {
+			ring(connection).publish(EventRing.DISCONNECTED, connection,
+					null, false);
+		}
+
+		@Override
+		public void received(Connection connection, Object object) {
+			ring(connection).publish(EventRing.RECEIVED, connection, object,
+					false);
+		}
+
+		@Override
+		public void idle(Connection connection) {
+			ring(connection).publish(EventRing.IDLE, connection, null, false);
+		}
+
+		@Override
+		public void writabilityChanged(Connection connection,
+				boolean writable) {
+			ring(connection).publish(EventRing.WRITABILITY_CHANGED,
+					connection, null, writable);
+		}
+
+		/**
+		 * Stops the threads. Events not processed yet and events notified
+		 * afterwards are discarded.
+		 */
+		public void stop() {
+			for (EventRing ring : rings)
+				ring.stop();
+		}
+	}
+
 	/**
 	 * Delays the notification of the wrapped listener to simulate lag on
 	 * incoming objects. Notification events are processed on a separate thread
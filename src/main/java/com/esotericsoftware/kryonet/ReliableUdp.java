@@ -0,0 +1,319 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static com.esotericsoftware.minlog.Log.TRACE;
+import static com.esotericsoftware.minlog.Log.trace;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import com.esotericsoftware.kryo.util.IntMap;
+import com.esotericsoftware.kryonet.FrameworkMessage.Reliable;
+
+/**
+ * The state of the reliable and sequenced UDP delivery of a connection. Each
+ * reliable datagram has a sequence number and is resent until the remote end
+ * acknowledges it. The latest sequence received and a bit field of the 32
+ * before it are sent with every datagram of this class, or on their own if no
+ * datagram is sent in time. At most {@link #WINDOW} datagrams are
+ * unacknowledged at a time, so every unacknowledged sequence is covered by
+ * the bit field. More datagrams wait until earlier ones are acknowledged. The
+ * resend timeout is derived from the round trip times measured with the
+ * acknowledgements. This class is thread-safe.
+ */
+class ReliableUdp {
+	static final int WINDOW = 32;
+	static final int INITIAL_RESEND_MILLIS = 100;
+	static final int MIN_RESEND_MILLIS = 10, MAX_RESEND_MILLIS = 2000;
+	private static final byte ACK = -1;
+
+	// Sending.
+	private final Packet[] window = new Packet[WINDOW];
+	private final ArrayDeque<Packet> backlog = new ArrayDeque<>();
+	private int nextSequence, nextOrder, nextSequenced;
+	/** The oldest unacknowledged sequence and the next sequence to send. */
+	private int base, nextSent;
+	private float smoothedRtt = -1, rttVariance;
+
+	// Receiving.
+	private boolean received, ackPending;
+	private int latest, latestBits;
+	private int nextDelivered;
+	private final IntMap<Object> outOfOrder = new IntMap<>();
+	private boolean sequencedReceived;
+	private int lastSequenced;
+
+	/**
+	 * Sends the object with the delivery, which must not be
+	 * {@link UdpDelivery#UNRELIABLE}.
+	 * 
+	 * @return The number of bytes sent or queued.
+	 */
+	synchronized int send(Connection connection, Object object,
+			UdpDelivery delivery, SocketAddress address) throws IOException {
+		Reliable message = new Reliable();
+		message.delivery = (byte) delivery.ordinal();
+		message.object = object;
+		if (delivery == UdpDelivery.SEQUENCED) {
+			message.sequence = nextSequenced++;
+			ByteBuffer datagram = serialize(connection, message);
+			connection.udp.send(connection, datagram, address);
+			return datagram.remaining();
+		}
+		message.sequence = nextSequence++;
+		if (delivery == UdpDelivery.RELIABLE_ORDERED)
+			message.order = nextOrder++;
+		Packet packet = new Packet(message.sequence,
+				serialize(connection, message));
+		if (backlog.isEmpty() && nextSent - base < WINDOW)
+			transmit(connection, packet, address, System.currentTimeMillis());
+		else
+			backlog.add(packet);
+		return packet.datagram.remaining();
+	}
+
+	private void transmit(Connection connection, Packet packet,
+			SocketAddress address, long time) throws IOException {
+		if (base == nextSent)
+			connection.tcp.wakeup(); // To schedule the resend.
+		window[packet.sequence & WINDOW - 1] = packet;
+		nextSent = packet.sequence + 1;
+		packet.firstSendTime = packet.sendTime = time;
+		connection.udp.send(connection, packet.datagram, address);
+	}
+
+	/** Adds the acknowledgement and serializes the message. */
+	private ByteBuffer serialize(Connection connection, Reliable message) {
+		message.hasAck = received;
+		message.ack = latest;
+		message.ackBits = latestBits;
+		ackPending = false;
+		try {
+			return connection.tcp.serialization.write(connection, message,
+					connection.udp.bufferSize);
+		} catch (Throwable ex) {
+			throw new KryoNetException("Error serializing object of type: "
+					+ (message.object == null ? "null"
+							: message.object.getClass().getName()),
+					ex);
+		}
+	}
+
+	/**
+	 * Processes a message from the remote end.
+	 * 
+	 * @param delivered
+	 *            Receives the objects to notify the listeners of, in order.
+	 * @return true if an acknowledgement needs to be sent.
+	 */
+	synchronized boolean receive(Connection connection, Reliable message,
+			SocketAddress address, List<Object> delivered)
+			throws IOException {
+		if (message.hasAck)
+			acknowledged(connection, message.ack, message.ackBits, address);
+		if (message.delivery == ACK)
+			return false;
+		if (message.delivery < 0
+				|| message.delivery >= UdpDelivery.values.length)
+			throw new KryoNetException(
+					"Invalid UDP delivery: " + message.delivery);
+		UdpDelivery delivery = UdpDelivery.values[message.delivery];
+		if (delivery == UdpDelivery.SEQUENCED) {
+			if (sequencedReceived && message.sequence - lastSequenced <= 0)
+				return false; // Stale.
+			sequencedReceived = true;
+			lastSequenced = message.sequence;
+			delivered.add(message.object);
+			return false;
+		}
+
+		boolean wasPending = ackPending;
+		ackPending = true;
+		if (!record(message.sequence)) {
+			if (TRACE)
+				trace("kryonet", connection + " received duplicate UDP: "
+						+ message.sequence);
+			return !wasPending;
+		}
+		if (delivery != UdpDelivery.RELIABLE_ORDERED)
+			delivered.add(message.object);
+		else if (message.order == nextDelivered) {
+			delivered.add(message.object);
+			nextDelivered++;
+			while (outOfOrder.containsKey(nextDelivered))
+				delivered.add(outOfOrder.remove(nextDelivered++));
+		} else if (message.order - nextDelivered > 0)
+			outOfOrder.put(message.order, message.object);
+		return !wasPending;
+	}
+
+	/**
+	 * Adds the sequence to the received sequences.
+	 * 
+	 * @return false if it was already received.
+	 */
+	private boolean record(int sequence) {
+		if (!received) {
+			received = true;
+			latest = sequence;
+			latestBits = 0;
+			return true;
+		}
+		int difference = sequence - latest;
+		if (difference > 0) {
+			latestBits = difference > 32 ? 0
+					: difference == 32 ? 1 << 31
+							: latestBits << difference
+									| 1 << difference - 1;
+			latest = sequence;
+			return true;
+		}
+		// Older than the bit field means it was acknowledged before, as the
+		// remote end does not send beyond its window.
+		if (difference == 0 || difference < -32)
+			return false;
+		int bit = 1 << -difference - 1;
+		if ((latestBits & bit) != 0)
+			return false;
+		latestBits |= bit;
+		return true;
+	}
+
+	private void acknowledged(Connection connection, int ack, int ackBits,
+			SocketAddress address) throws IOException {
+		long time = System.currentTimeMillis();
+		for (int i = 0; i <= 32; i++) {
+			if (i > 0 && (ackBits & 1 << i - 1) == 0)
+				continue;
+			int sequence = ack - i;
+			if (sequence - base < 0 || sequence - nextSent >= 0)
+				continue;
+			int index = sequence & WINDOW - 1;
+			Packet packet = window[index];
+			if (packet == null || packet.sequence != sequence)
+				continue;
+			window[index] = null;
+			if (packet.resends == 0)
+				sampleRtt(time - packet.sendTime);
+		}
+		while (base != nextSent && window[base & WINDOW - 1] == null)
+			base++;
+		while (!backlog.isEmpty() && nextSent - base < WINDOW)
+			transmit(connection, backlog.poll(), address, time);
+	}
+
+	private void sampleRtt(long rtt) {
+		if (smoothedRtt < 0) {
+			smoothedRtt = rtt;
+			rttVariance = rtt / 2f;
+		} else {
+			rttVariance = 0.75f * rttVariance
+					+ 0.25f * Math.abs(smoothedRtt - rtt);
+			smoothedRtt = 0.875f * smoothedRtt + 0.125f * rtt;
+		}
+	}
+
+	private long resendMillis(int resends) {
+		long millis = smoothedRtt < 0 ? INITIAL_RESEND_MILLIS
+				: (long) (smoothedRtt + 4 * rttVariance);
+		millis = Math.max(MIN_RESEND_MILLIS, millis) << Math.min(resends, 4);
+		return Math.min(millis, MAX_RESEND_MILLIS);
+	}
+
+	/**
+	 * Resends the datagrams that were not acknowledged in time.
+	 * 
+	 * @param timeoutMillis
+	 *            A datagram that is not acknowledged for longer fails the
+	 *            connection, or <code>0</code> to resend indefinitely.
+	 * @return The time the next datagram is due to be resent, or
+	 *         <code>0</code> if none is unacknowledged.
+	 */
+	synchronized long resend(Connection connection, SocketAddress address,
+			long time, int timeoutMillis) throws IOException {
+		long next = 0;
+		for (int sequence = base; sequence != nextSent; sequence++) {
+			Packet packet = window[sequence & WINDOW - 1];
+			if (packet == null)
+				continue;
+			if (timeoutMillis > 0
+					&& time - packet.firstSendTime > timeoutMillis)
+				throw new KryoNetException("Reliable UDP datagram " + sequence
+						+ " was not acknowledged in time.");
+			long due = packet.sendTime + resendMillis(packet.resends);
+			if (due <= time) {
+				packet.resends++;
+				packet.sendTime = time;
+				connection.udp.send(connection, packet.datagram, address);
+				if (TRACE)
+					trace("kryonet", connection + " resent UDP: " + sequence);
+				due = time + resendMillis(packet.resends);
+			}
+			if (next == 0 || due < next)
+				next = due;
+		}
+		return next;
+	}
+
+	/**
+	 * Sends an acknowledgement if the received datagrams were not yet
+	 * acknowledged by a datagram sent since.
+	 */
+	synchronized void sendAck(Connection connection, SocketAddress address)
+			throws IOException {
+		if (!ackPending)
+			return;
+		Reliable message = new Reliable();
+		message.delivery = ACK;
+		connection.udp.send(serialize(connection, message), address);
+	}
+
+	/**
+	 * Returns the timeout to select with so a datagram due at the given time
+	 * is resent in time, <code>0</code> to select without waiting.
+	 * 
+	 * @param dueTime
+	 *            The time returned by {@link #resend}, or <code>0</code>.
+	 */
+	static int selectTimeout(int timeout, long dueTime) {
+		if (dueTime == 0 || timeout <= 0)
+			return timeout;
+		long delay = dueTime - System.currentTimeMillis();
+		if (delay <= 0)
+			return 0;
+		return (int) Math.min(timeout, delay);
+	}
+
+	static private class Packet {
+		final int sequence;
+		final ByteBuffer datagram;
+		long firstSendTime, sendTime;
+		int resends;
+
+		Packet(int sequence, ByteBuffer datagram) {
+			this.sequence = sequence;
+			this.datagram = datagram;
+		}
+	}
+}
@@ -32,17 +32,22 @@ import static com.esotericsoftware.minlog.Log.warn;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
+import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.util.IntMap;
@@ -51,6 +56,7 @@ import com.esotericsoftware.kryonet.FrameworkMessage.RegisterTCP;
 import com.esotericsoftware.kryonet.FrameworkMessage.RegisterUDP;
 import com.esotericsoftware.kryonet.serialization.KryoSerialization;
 import com.esotericsoftware.kryonet.serialization.Serialization;
+import com.esotericsoftware.kryonet.serialization.ThreadLocalKryoSerialization;
 
 /**
  * Manages TCP and optionally UDP connections from many {@linkplain Client
@@ -61,24 +67,50 @@ import com.esotericsoftware.kryonet.serialization.Serialization;
 public class Server implements EndPoint {
 	public static final int DEFAULT_WRITE_BUFFER_SIZE = 16384;
 	public static final int DEFAULT_OBJECT_BUFFER_SIZE = 2048;
+	/**
+	 * One worker per available processor.
+	 * 
+	 * @see #setWorkerCount(int)
+	 */
+	public static final int DEFAULT_WORKER_COUNT = Runtime.getRuntime()
+			.availableProcessors();
 
 	private final Serialization serialization;
 	private final int writeBufferSize, objectBufferSize;
 	private final Selector selector;
+	private final ServerWorker mainWorker;
+	private ServerWorker[] workers = {};
+	private int workerCount, nextWorker;
+	private BufferPool bufferPool;
+	private boolean writeQueue, directBuffers, reusePort;
+	private int lowWatermark, highWatermark;
 	private int emptySelects;
 	private ServerSocketChannel serverChannel;
-	private UdpConnection udp;
-	private Connection[] connections = {};
+	UdpConnection udp;
+	private final ConnectionRegistry connections = new ConnectionRegistry();
+	private final ThreadLocal<ByteBuffer> tcpFrames, udpDatagrams;
 	private final IntMap<Connection> pendingConnections = new IntMap<>();
+	/** Registered UDP connections by remote address. */
+	private final ConcurrentHashMap<InetSocketAddress, Connection> udpConnections = new ConcurrentHashMap<>();
 	Listener[] listeners = {};
 	private final Object listenerLock = new Object();
 	private int nextConnectionID = 1;
+	/** Guards the connection IDs when workers accept connections. */
+	private final Object acceptLock = new Object();
 	private volatile boolean shutdown;
 	private final Object updateLock = new Object();
 	private Thread updateThread;
 	private ServerDiscoveryHandler discoveryHandler;
+	private final ConcurrentHashMap<Class<?>, UdpDelivery> udpDeliveries = new ConcurrentHashMap<>();
+	private int udpReceiveBudget = UdpConnection.RECEIVE_BUDGET;
+	int readBudget = 64;
+	volatile WaitStrategy waitStrategy = new WaitStrategy.Blocking();
+	private Executor decodeExecutor;
+
+	/** Whether a server listener handles the idle event. */
+	volatile boolean idleListener;
 
-	private final Listener dispatchListener = new Listener() {
+	final Listener dispatchListener = new Listener() {
 		@Override
 		public void connected(Connection connection) {
 			Listener[] listeners = Server.this.listeners;
@@ -107,6 +139,14 @@ public class Server implements EndPoint {
 			for (int i = 0, n = listeners.length; i < n; i++)
 				listeners[i].idle(connection);
 		}
+
+		@Override
+		public void writabilityChanged(Connection connection,
+				boolean writable) {
+			Listener[] listeners = Server.this.listeners;
+			for (int i = 0, n = listeners.length; i < n; i++)
+				listeners[i].writabilityChanged(connection, writable);
+		}
 	};
 
 	/**
@@ -133,7 +173,8 @@ public class Server implements EndPoint {
 	 *            for some serialized objects to be queued in case the buffer is
 	 *            temporarily not writable. The amount of head room needed is
 	 *            dependent upon the size of objects being sent and how often
-	 *            they are sent.
+	 *            they are sent. See {@link #setWriteQueue(int, int)} to queue
+	 *            the bytes without a fixed limit instead.
 	 * @param objectBufferSize
 	 *            One (using only TCP) or three (using both TCP and UDP) buffers
 	 *            of this size are allocated. These buffers are used to hold the
@@ -153,6 +194,13 @@ public class Server implements EndPoint {
 		this.objectBufferSize = objectBufferSize;
 		this.serialization = serialization;
 
+		bufferPool = new BufferPool(false, BufferPool.MAX_FREE_BYTES,
+				writeBufferSize);
+		tcpFrames = ThreadLocal
+				.withInitial(() -> ByteBuffer.allocate(writeBufferSize));
+		udpDatagrams = ThreadLocal.withInitial(
+				() -> ByteBuffer.allocateDirect(objectBufferSize));
+
 		this.discoveryHandler = new ServerDiscoveryHandler() {
 		};
 
@@ -161,6 +209,81 @@ public class Server implements EndPoint {
 		} catch (IOException ex) {
 			throw new RuntimeException("Error opening the selector.", ex);
 		}
+		mainWorker = new ServerWorker(this, selector);
+	}
+
+	/**
+	 * Sets the delivery of the objects of the type, but not its subtypes,
+	 * sent with {@link Connection#sendUDP(Object)} and the UDP broadcasts of
+	 * this server. <code>null</code> restores
+	 * {@link UdpDelivery#UNRELIABLE}.
+	 * 
+	 * @see Connection#sendUDP(Object, UdpDelivery)
+	 */
+	public void setUdpDelivery(Class<?> type, UdpDelivery delivery) {
+		if (delivery == null || delivery == UdpDelivery.UNRELIABLE)
+			udpDeliveries.remove(type);
+		else
+			udpDeliveries.put(type, delivery);
+	}
+
+	/**
+	 * Sets the maximum number of datagrams read each time the UDP channel is
+	 * selected. Reading the datagrams that arrived meanwhile saves a select
+	 * per datagram, while the budget keeps a flood of datagrams from delaying
+	 * the TCP connections of the update thread. Defaults to
+	 * {@link UdpConnection#RECEIVE_BUDGET}.
+	 */
+	public void setUdpReceiveBudget(int udpReceiveBudget) {
+		if (udpReceiveBudget <= 0)
+			throw new IllegalArgumentException(
+					"udpReceiveBudget must be > 0: " + udpReceiveBudget);
+		this.udpReceiveBudget = udpReceiveBudget;
+	}
+
+	/**
+	 * Sets the maximum number of objects read from a TCP connection each
+	 * time it is selected. A connection with objects left is read again once
+	 * the other connections that are ready were read, and then before every
+	 * select, so one connection flooding small objects cannot starve the
+	 * others for the whole update. The objects of a connection are still
+	 * received in order. Defaults to <code>64</code>.
+	 */
+	public void setReadBudget(int readBudget) {
+		if (readBudget <= 0)
+			throw new IllegalArgumentException(
+					"readBudget must be > 0: " + readBudget);
+		this.readBudget = readBudget;
+	}
+
+	/**
+	 * If not null, the objects received over TCP by connections accepted after
+	 * this call are deserialized by the executor instead of the thread that
+	 * reads the connection. That thread then only splits the bytes read into
+	 * frames using the length prefix, so large or slow to deserialize objects
+	 * do not delay reading the other connections. The frames of a connection
+	 * are deserialized by one task at a time, so its objects are still
+	 * received in order, but {@link Listener#received(Connection, Object)} is
+	 * called by the executor's threads. So is
+	 * {@link Listener#disconnected(Connection)}, after the objects received
+	 * before the connection was closed. The serialization must be
+	 * thread-safe, and a serialization that does not lock, such as
+	 * {@link ThreadLocalKryoSerialization}, lets the executor deserialize the
+	 * objects of several connections in parallel. File headers are still
+	 * deserialized by the reading thread. Defaults to <code>null</code>.
+	 */
+	public void setDecodeExecutor(Executor decodeExecutor) {
+		this.decodeExecutor = decodeExecutor;
+	}
+
+	/**
+	 * Sets how the update thread and the worker threads wait for their
+	 * selectors. Defaults to {@link WaitStrategy.Blocking}.
+	 */
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		if (waitStrategy == null)
+			throw new NullPointerException("waitStrategy cannot be null.");
+		this.waitStrategy = waitStrategy;
 	}
 
 	public void setDiscoveryHandler(
@@ -172,6 +295,98 @@ public class Server implements EndPoint {
 		return serialization;
 	}
 
+	/**
+	 * Sets the number of worker selectors new TCP connections are distributed
+	 * to. Each worker reads, writes, sends keep alives and fires the idle
+	 * events for its connections on its own thread, so the listeners of a
+	 * connection are notified on that thread instead of the update thread.
+	 * Accepting connections and reading UDP is still done by
+	 * {@link #update(int)}.
+	 * <p>
+	 * Defaults to <code>0</code>, which processes all connections on the
+	 * update thread as before workers existed, so listeners that expect to be
+	 * notified on the update thread keep working. {@link #DEFAULT_WORKER_COUNT}
+	 * uses one worker per available processor. Takes effect with the next call
+	 * to {@code bind}.
+	 */
+	public void setWorkerCount(int workerCount) {
+		if (workerCount < 0)
+			throw new IllegalArgumentException(
+					"workerCount cannot be negative: " + workerCount);
+		this.workerCount = workerCount;
+	}
+
+	public int getWorkerCount() {
+		return workerCount;
+	}
+
+	/**
+	 * If true, {@code bind} opens a TCP and a UDP socket on the same ports for
+	 * every {@linkplain #setWorkerCount(int) worker} too, using
+	 * <code>SO_REUSEPORT</code>. The kernel then distributes new connections
+	 * and datagrams across the sockets, so they are accepted and read by the
+	 * workers in parallel instead of only by {@link #update(int)}. A
+	 * connection accepted by a worker stays on that worker. The datagrams of
+	 * a client are always read by the same worker, which fires their received
+	 * events.
+	 * <p>
+	 * Requires Java 9 or later and an operating system that balances
+	 * <code>SO_REUSEPORT</code> sockets, such as Linux 3.9 or later.
+	 * Otherwise only the sockets of {@link #update(int)} are opened. Defaults
+	 * to <code>false</code>. Takes effect with the next call to {@code bind}.
+	 */
+	public void setReusePort(boolean reusePort) {
+		this.reusePort = reusePort;
+	}
+
+	/**
+	 * Queues the objects sent over TCP by connections accepted after this call
+	 * as frames in buffers from a pool shared by all connections, instead of
+	 * allocating a write buffer for each connection. Sending threads serialize
+	 * a frame and queue it without locking, the worker of the connection
+	 * writes the queued frames with gathering writes. The queue is unbounded,
+	 * so a connection
+	 * is not closed when its remote end temporarily does not keep up. Instead
+	 * it becomes {@linkplain Connection#isWritable() unwritable} once more than
+	 * <code>highWatermark</code> bytes are queued and writable again once
+	 * drained to <code>lowWatermark</code> bytes, so senders can throttle. The
+	 * write buffer size is then only the maximum size of a serialized object.
+	 * 
+	 * @see Listener#writabilityChanged(Connection, boolean)
+	 */
+	public void setWriteQueue(int lowWatermark, int highWatermark) {
+		WriteQueue.checkWatermarks(lowWatermark, highWatermark);
+		writeQueue = true;
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+	}
+
+	/**
+	 * If true, connections accepted after this call read and write TCP using
+	 * direct buffers, which the socket channels use without an extra copy.
+	 * The read and write buffers, and the frames of a
+	 * {@linkplain #setWriteQueue(int, int) write queue}, are taken from a pool
+	 * of size classes shared by all connections and returned to it once a
+	 * connection is closed, so a direct buffer is not allocated for every
+	 * connection. The UDP read buffer is direct too, if set before
+	 * {@code bind}.
+	 * <p>
+	 * Defaults to <code>false</code>, which allocates heap buffers for each
+	 * connection.
+	 */
+	public void setDirectBuffers(boolean directBuffers) {
+		if (directBuffers == this.directBuffers)
+			return;
+		this.directBuffers = directBuffers;
+		bufferPool = new BufferPool(directBuffers, BufferPool.MAX_FREE_BYTES,
+				writeBufferSize);
+	}
+
+	/**
+	 * {@inheritDoc} A {@link ThreadLocalKryoSerialization} uses a Kryo
+	 * instance per thread, so <code>null</code> is returned for it too. Its
+	 * classes are registered by the initializer passed to its constructor.
+	 */
 	@Override
 	public Kryo getKryo() {
 		return serialization instanceof KryoSerialization
@@ -210,21 +425,54 @@ public class Server implements EndPoint {
 		synchronized (updateLock) {
 			selector.wakeup();
 			try {
-				serverChannel = selector.provider().openServerSocketChannel();
-				serverChannel.socket().bind(tcpPort);
-				serverChannel.configureBlocking(false);
-				serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+				SocketOption<Boolean> reusePort = workerCount > 0
+						&& this.reusePort ? reusePortOption() : null;
+				serverChannel = openServerChannel(selector, tcpPort,
+						reusePort);
 				if (DEBUG)
 					debug("kryonet", "Accepting connections on port: " + tcpPort
 							+ "/TCP");
 
 				if (udpPort != null) {
-					udp = new UdpConnection(serialization, objectBufferSize);
-					udp.bind(selector, udpPort);
+					udp = new UdpConnection(serialization, objectBufferSize,
+							directBuffers);
+					udp.bind(selector, udpPort, reusePort);
 					if (DEBUG)
 						debug("kryonet", "Accepting connections on port: "
 								+ udpPort + "/UDP");
 				}
+
+				if (workerCount > 0) {
+					// Ephemeral ports are shared with the workers.
+					tcpPort = new InetSocketAddress(tcpPort.getAddress(),
+							serverChannel.socket().getLocalPort());
+					if (udpPort != null)
+						udpPort = new InetSocketAddress(udpPort.getAddress(),
+								udp.datagramChannel.socket().getLocalPort());
+					ServerWorker[] workers = new ServerWorker[workerCount];
+					this.workers = workers;
+					for (int i = 0; i < workerCount; i++) {
+						workers[i] = new ServerWorker(this,
+								selector.provider().openSelector());
+						if (reusePort != null) {
+							workers[i].serverChannel = openServerChannel(
+									workers[i].selector, tcpPort, reusePort);
+							if (udpPort != null) {
+								workers[i].udp = new UdpConnection(
+										serialization, objectBufferSize,
+										directBuffers);
+								workers[i].udp.bind(workers[i].selector,
+										udpPort, reusePort);
+							}
+						}
+						workers[i].start("Server worker " + i);
+					}
+					if (DEBUG)
+						debug("kryonet", "Started " + workerCount
+								+ " server worker threads"
+								+ (reusePort != null ? " with their own sockets."
+										: "."));
+				}
 			} catch (IOException ex) {
 				close();
 				throw ex;
@@ -234,6 +482,51 @@ public class Server implements EndPoint {
 			info("kryonet", "Server opened.");
 	}
 
+	private ServerSocketChannel openServerChannel(Selector selector,
+			InetSocketAddress tcpPort, SocketOption<Boolean> reusePort)
+			throws IOException {
+		ServerSocketChannel serverChannel = selector.provider()
+				.openServerSocketChannel();
+		try {
+			if (reusePort != null)
+				serverChannel.setOption(reusePort, true);
+			serverChannel.socket().bind(tcpPort);
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException ex) {
+			serverChannel.close();
+			throw ex;
+		}
+		return serverChannel;
+	}
+
+	/**
+	 * Returns the <code>SO_REUSEPORT</code> option if it is supported, else
+	 * <code>null</code>. The option was added in Java 9.
+	 */
+	@SuppressWarnings("unchecked")
+	static SocketOption<Boolean> reusePortOption() {
+		SocketOption<Boolean> option;
+		try {
+			option = (SocketOption<Boolean>) StandardSocketOptions.class
+					.getField("SO_REUSEPORT").get(null);
+		} catch (ReflectiveOperationException ex) {
+			if (WARN)
+				warn("kryonet", "SO_REUSEPORT requires Java 9 or later.");
+			return null;
+		}
+		try (ServerSocketChannel serverChannel = ServerSocketChannel.open();
+				DatagramChannel datagramChannel = DatagramChannel.open()) {
+			if (serverChannel.supportedOptions().contains(option)
+					&& datagramChannel.supportedOptions().contains(option))
+				return option;
+		} catch (IOException ignored) {
+		}
+		if (WARN)
+			warn("kryonet", "SO_REUSEPORT is not supported.");
+		return null;
+	}
+
 	/**
 	 * Accepts any new connections and reads or writes any pending data for the
 	 * current connections.
@@ -250,34 +543,20 @@ public class Server implements EndPoint {
 									// selector is used to bind the server
 									// connection.
 		}
-		long startTime = System.currentTimeMillis();
-		int select = 0;
-		if (timeout > 0) {
-			select = selector.select(timeout);
-		} else {
-			select = selector.selectNow();
-		}
+		int selectTimeout = mainWorker.selectTimeout(timeout);
+		int select = waitStrategy.select(selector, selectTimeout,
+				selectTimeout == timeout ? emptySelects : 0);
 		if (select == 0) {
-			emptySelects++;
-			if (emptySelects == 100) {
-				emptySelects = 0;
-				// NIO freaks and returns immediately with 0 sometimes, so try
-				// to keep from hogging the CPU.
-				long elapsedTime = System.currentTimeMillis() - startTime;
-				try {
-					if (elapsedTime < 25)
-						Thread.sleep(25 - elapsedTime);
-				} catch (InterruptedException ex) {
-				}
-			}
+			// A timeout shortened for lingering connections is expected.
+			if (selectTimeout == timeout && emptySelects < Integer.MAX_VALUE)
+				emptySelects++;
 		} else {
 			emptySelects = 0;
 			Set<SelectionKey> keys = selector.selectedKeys();
 			synchronized (keys) {
 				UdpConnection udp = this.udp;
-				outer: for (Iterator<SelectionKey> iter = keys.iterator(); iter
+				for (Iterator<SelectionKey> iter = keys.iterator(); iter
 						.hasNext();) {
-					keepAlive();
 					SelectionKey selectionKey = iter.next();
 					iter.remove();
 					Connection fromConnection = (Connection) selectionKey
@@ -287,73 +566,7 @@ public class Server implements EndPoint {
 
 						if (fromConnection != null) { // Must be a TCP read or
 														// write operation.
-							if (udp != null
-									&& fromConnection.udpRemoteAddress == null) {
-								fromConnection.close();
-								continue;
-							}
-							if ((ops & SelectionKey.OP_READ) == SelectionKey.OP_READ) {
-								try {
-									while (true) {
-										Object object = fromConnection.tcp
-												.readObject(fromConnection);
-										if (object == null)
-											break;
-										if (DEBUG) {
-											String objectString = object == null
-													? "null"
-													: object.getClass()
-															.getSimpleName();
-											if (!(object instanceof FrameworkMessage)) {
-												debug("kryonet", fromConnection
-														+ " received TCP: "
-														+ objectString);
-											} else if (TRACE) {
-												trace("kryonet", fromConnection
-														+ " received TCP: "
-														+ objectString);
-											}
-										}
-										fromConnection.notifyReceived(object);
-									}
-								} catch (IOException ex) {
-									if (TRACE) {
-										trace("kryonet",
-												"Unable to read TCP from: "
-														+ fromConnection,
-												ex);
-									} else if (DEBUG) {
-										debug("kryonet",
-												fromConnection + " update: "
-														+ ex.getMessage());
-									}
-									fromConnection.close();
-								} catch (KryoNetException ex) {
-									if (ERROR)
-										error("kryonet",
-												"Error reading TCP from connection: "
-														+ fromConnection,
-												ex);
-									fromConnection.close();
-								}
-							}
-							if ((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE) {
-								try {
-									fromConnection.tcp.writeOperation();
-								} catch (IOException ex) {
-									if (TRACE) {
-										trace("kryonet",
-												"Unable to write TCP to connection: "
-														+ fromConnection,
-												ex);
-									} else if (DEBUG) {
-										debug("kryonet",
-												fromConnection + " update: "
-														+ ex.getMessage());
-									}
-									fromConnection.close();
-								}
-							}
+							mainWorker.process(selectionKey, fromConnection);
 							continue;
 						}
 
@@ -365,7 +578,7 @@ public class Server implements EndPoint {
 								SocketChannel socketChannel = serverChannel
 										.accept();
 								if (socketChannel != null)
-									acceptOperation(socketChannel);
+									acceptOperation(socketChannel, null);
 							} catch (IOException ex) {
 								if (DEBUG)
 									debug("kryonet",
@@ -380,117 +593,7 @@ public class Server implements EndPoint {
 							selectionKey.channel().close();
 							continue;
 						}
-						InetSocketAddress fromAddress;
-						try {
-							fromAddress = udp.readFromAddress();
-						} catch (IOException ex) {
-							if (WARN)
-								warn("kryonet", "Error reading UDP data.", ex);
-							continue;
-						}
-						if (fromAddress == null)
-							continue;
-
-						Connection[] connections = this.connections;
-						for (int i = 0, n = connections.length; i < n; i++) {
-							Connection connection = connections[i];
-							if (fromAddress
-									.equals(connection.udpRemoteAddress)) {
-								fromConnection = connection;
-								break;
-							}
-						}
-
-						Object object;
-						try {
-							object = udp.readObject(fromConnection);
-						} catch (KryoNetException ex) {
-							if (WARN) {
-								if (fromConnection != null) {
-									if (ERROR)
-										error("kryonet",
-												"Error reading UDP from connection: "
-														+ fromConnection,
-												ex);
-								} else
-									warn("kryonet",
-											"Error reading UDP from unregistered address: "
-													+ fromAddress,
-											ex);
-							}
-							continue;
-						}
-
-						if (object instanceof FrameworkMessage) {
-							if (object instanceof RegisterUDP) {
-								// Store the fromAddress on the connection and
-								// reply over TCP with a RegisterUDP to indicate
-								// success.
-								int fromConnectionID = ((RegisterUDP) object).connectionID;
-								Connection connection = pendingConnections
-										.remove(fromConnectionID);
-								if (connection != null) {
-									if (connection.udpRemoteAddress != null)
-										continue outer;
-									connection.udpRemoteAddress = fromAddress;
-									addConnection(connection);
-									connection.sendTCP(new RegisterUDP());
-									if (DEBUG)
-										debug("kryonet",
-												"Port " + udp.datagramChannel
-														.socket().getLocalPort()
-														+ "/UDP connected to: "
-														+ fromAddress);
-									connection.notifyConnected();
-									continue;
-								}
-								if (DEBUG)
-									debug("kryonet",
-											"Ignoring incoming RegisterUDP with invalid connection ID: "
-													+ fromConnectionID);
-								continue;
-							}
-							if (object instanceof DiscoverHost) {
-								try {
-									boolean responseSent = discoveryHandler
-											.onDiscoverHost(udp.datagramChannel,
-													fromAddress);
-									if (DEBUG && responseSent)
-										debug("kryonet",
-												"Responded to host discovery from: "
-														+ fromAddress);
-								} catch (IOException ex) {
-									if (WARN)
-										warn("kryonet",
-												"Error replying to host discovery from: "
-														+ fromAddress,
-												ex);
-								}
-								continue;
-							}
-						}
-
-						if (fromConnection != null) {
-							if (DEBUG) {
-								String objectString = object == null ? "null"
-										: object.getClass().getSimpleName();
-								if (object instanceof FrameworkMessage) {
-									if (TRACE)
-										trace("kryonet",
-												fromConnection
-														+ " received UDP: "
-														+ objectString);
-								} else
-									debug("kryonet", fromConnection
-											+ " received UDP: " + objectString);
-							}
-							fromConnection.notifyReceived(object);
-							continue;
-						}
-						if (DEBUG)
-							debug("kryonet",
-									"Ignoring UDP from unregistered address: "
-											+ fromAddress);
+						readUDP(udp, mainWorker);
 					} catch (CancelledKeyException ex) {
 						if (fromConnection != null)
 							fromConnection.close();
@@ -499,32 +602,9 @@ public class Server implements EndPoint {
 					}
 				}
 			}
+			mainWorker.sendUdpAcks();
 		}
-		long time = System.currentTimeMillis();
-		Connection[] connections = this.connections;
-		for (int i = 0, n = connections.length; i < n; i++) {
-			Connection connection = connections[i];
-			if (connection.tcp.isTimedOut(time)) {
-				if (DEBUG)
-					debug("kryonet", connection + " timed out.");
-				connection.close();
-			} else {
-				if (connection.tcp.needsKeepAlive(time))
-					connection.sendTCP(FrameworkMessage.keepAlive);
-			}
-			if (connection.isIdle())
-				connection.notifyIdle();
-		}
-	}
-
-	private void keepAlive() {
-		long time = System.currentTimeMillis();
-		Connection[] connections = this.connections;
-		for (int i = 0, n = connections.length; i < n; i++) {
-			Connection connection = connections[i];
-			if (connection.tcp.needsKeepAlive(time))
-				connection.sendTCP(FrameworkMessage.keepAlive);
-		}
+		mainWorker.sweep(System.currentTimeMillis());
 	}
 
 	@Override
@@ -568,43 +648,229 @@ public class Server implements EndPoint {
 			trace("kryonet", "Server thread stopping.");
 	}
 
-	private void acceptOperation(SocketChannel socketChannel) {
+	/**
+	 * @param shard
+	 *            The worker whose own server channel accepted the connection,
+	 *            or <code>null</code>.
+	 */
+	void acceptOperation(SocketChannel socketChannel, ServerWorker shard) {
 		Connection connection = newConnection();
-		connection.initialize(serialization, writeBufferSize, objectBufferSize);
+		BufferPool bufferPool = this.bufferPool;
+		connection.initialize(serialization, writeBufferSize, objectBufferSize,
+				writeQueue ? new WriteQueue(bufferPool, lowWatermark,
+						highWatermark) : null,
+				directBuffers ? bufferPool : null);
+		if (decodeExecutor != null)
+			connection.tcp.decodeQueue = new DecodeQueue(connection,
+					decodeExecutor, bufferPool);
 		connection.endPoint = this;
-		UdpConnection udp = this.udp;
+		connection.udpDeliveries = udpDeliveries;
+		UdpConnection udp = shard != null && shard.udp != null ? shard.udp
+				: this.udp;
 		if (udp != null)
 			connection.udp = udp;
-		try {
-			SelectionKey selectionKey = connection.tcp.accept(selector,
-					socketChannel);
-			selectionKey.attach(connection);
 
+		synchronized (acceptLock) {
 			int id = nextConnectionID++;
 			if (nextConnectionID == -1)
 				nextConnectionID = 1;
 			connection.id = id;
+
+			ServerWorker[] workers = this.workers;
+			if (shard != null)
+				connection.worker = shard;
+			else if (workers.length == 0)
+				connection.worker = mainWorker;
+			else {
+				if (nextWorker >= workers.length)
+					nextWorker = 0;
+				connection.worker = workers[nextWorker++];
+			}
+		}
+		connection.tcp.flushQueue = connection.worker.flushQueue;
+		connection.worker
+				.execute(() -> registerConnection(connection, socketChannel));
+	}
+
+	/**
+	 * Registers the connection with the selector of its worker. Called on the
+	 * worker's thread.
+	 */
+	private void registerConnection(Connection connection,
+			SocketChannel socketChannel) {
+		UdpConnection udp = connection.udp;
+		try {
+			SelectionKey selectionKey = connection.tcp
+					.accept(connection.worker.selector, socketChannel);
+			selectionKey.attach(connection);
+
 			connection.setConnected(true);
 			connection.addListener(dispatchListener);
 
 			if (udp == null)
 				addConnection(connection);
-			else
-				pendingConnections.put(id, connection);
+			else {
+				synchronized (pendingConnections) {
+					pendingConnections.put(connection.id, connection);
+				}
+			}
 
 			RegisterTCP registerConnection = new RegisterTCP();
-			registerConnection.connectionID = id;
+			registerConnection.connectionID = connection.id;
 			connection.sendTCP(registerConnection);
 
 			if (udp == null)
 				connection.notifyConnected();
 		} catch (IOException ex) {
 			connection.close();
+			connection.tcp.releaseBuffers();
 			if (DEBUG)
 				debug("kryonet", "Unable to accept TCP connection.", ex);
 		}
 	}
 
+	/**
+	 * Reads the datagrams received since the last select, up to the
+	 * {@linkplain #setUdpReceiveBudget(int) receive budget}, so one select is
+	 * shared by many datagrams. Called on the thread of the worker whose
+	 * selector the UDP channel is registered with.
+	 */
+	void readUDP(UdpConnection udp, ServerWorker worker) {
+		for (int i = 0; i < udpReceiveBudget; i++) {
+			InetSocketAddress fromAddress;
+			try {
+				fromAddress = udp.readFromAddress();
+			} catch (IOException ex) {
+				if (WARN)
+					warn("kryonet", "Error reading UDP data.", ex);
+				return;
+			}
+			if (fromAddress == null)
+				return; // No more datagrams.
+
+			Connection fromConnection = udpConnections.get(fromAddress);
+			try {
+				// A datagram holds more than one object if they were packed.
+				while (true) {
+					Object object;
+					try {
+						object = udp.readObject(fromConnection);
+					} catch (KryoNetException ex) {
+						if (WARN) {
+							if (fromConnection != null) {
+								if (ERROR)
+									error("kryonet",
+											"Error reading UDP from connection: "
+													+ fromConnection,
+											ex);
+							} else
+								warn("kryonet",
+										"Error reading UDP from unregistered address: "
+												+ fromAddress,
+										ex);
+						}
+						break;
+					}
+					if (object == null)
+						break;
+					receiveUDP(udp, worker, fromAddress, fromConnection,
+							object);
+				}
+			} catch (CancelledKeyException ex) {
+				if (fromConnection == null)
+					throw ex;
+				fromConnection.close();
+			}
+		}
+	}
+
+	/**
+	 * Handles an object received over UDP.
+	 * 
+	 * @param fromConnection
+	 *            The connection registered for the address, or
+	 *            <code>null</code>.
+	 */
+	private void receiveUDP(UdpConnection udp, ServerWorker worker,
+			InetSocketAddress fromAddress, Connection fromConnection,
+			Object object) {
+		if (object instanceof FrameworkMessage) {
+			if (object instanceof RegisterUDP) {
+				// Store the fromAddress on the connection and reply over TCP
+				// with a RegisterUDP to indicate success.
+				int fromConnectionID = ((RegisterUDP) object).connectionID;
+				Connection connection;
+				synchronized (pendingConnections) {
+					connection = pendingConnections.remove(fromConnectionID);
+				}
+				if (connection != null) {
+					if (connection.udpRemoteAddress != null)
+						return;
+					connection.udpRemoteAddress = fromAddress;
+					connection.worker.execute(() -> registerUDP(connection));
+					return;
+				}
+				if (DEBUG)
+					debug("kryonet",
+							"Ignoring incoming RegisterUDP with invalid connection ID: "
+									+ fromConnectionID);
+				return;
+			}
+			if (object instanceof DiscoverHost) {
+				try {
+					boolean responseSent = discoveryHandler
+							.onDiscoverHost(udp.datagramChannel, fromAddress);
+					if (DEBUG && responseSent)
+						debug("kryonet", "Responded to host discovery from: "
+								+ fromAddress);
+				} catch (IOException ex) {
+					if (WARN)
+						warn("kryonet", "Error replying to host discovery from: "
+								+ fromAddress, ex);
+				}
+				return;
+			}
+		}
+
+		if (fromConnection != null) {
+			if (DEBUG) {
+				String objectString = object == null ? "null"
+						: object.getClass().getSimpleName();
+				if (object instanceof FrameworkMessage) {
+					if (TRACE)
+						trace("kryonet", fromConnection + " received UDP: "
+								+ objectString);
+				} else
+					debug("kryonet",
+							fromConnection + " received UDP: " + objectString);
+			}
+			if (fromConnection.receiveUDP(object))
+				worker.udpAcks.add(fromConnection);
+			return;
+		}
+		if (DEBUG)
+			debug("kryonet",
+					"Ignoring UDP from unregistered address: " + fromAddress);
+	}
+
+	/**
+	 * Completes the registration of a connection whose RegisterUDP was
+	 * received. Called on the connection's worker thread, so the connected
+	 * event is fired before any object received over TCP.
+	 */
+	private void registerUDP(Connection connection) {
+		if (!connection.isConnected)
+			return; // Closed while the registration was queued.
+		addConnection(connection);
+		udpConnections.put(connection.udpRemoteAddress, connection);
+		connection.sendTCP(new RegisterUDP());
+		if (DEBUG)
+			debug("kryonet", "Port "
+					+ connection.udp.datagramChannel.socket().getLocalPort()
+					+ "/UDP connected to: " + connection.udpRemoteAddress);
+		connection.notifyConnected();
+	}
+
 	/**
 	 * Allows the connections used by the server to be subclassed. This can be
 	 * useful for storage per connection without an additional lookup.
@@ -614,78 +880,156 @@ public class Server implements EndPoint {
 	}
 
 	private void addConnection(Connection connection) {
-		Connection[] newConnections = new Connection[connections.length + 1];
-		newConnections[0] = connection;
-		System.arraycopy(connections, 0, newConnections, 1, connections.length);
-		connections = newConnections;
+		connections.add(connection);
+		connection.worker.addConnection(connection);
 	}
 
 	void removeConnection(Connection connection) {
-		ArrayList<Connection> temp = new ArrayList<>(
-				Arrays.asList(connections));
-		temp.remove(connection);
-		connections = temp.toArray(new Connection[temp.size()]);
+		connections.remove(connection);
+		if (connection.worker != null)
+			connection.worker.removeConnection(connection);
+		InetSocketAddress udpRemoteAddress = connection.udpRemoteAddress;
+		if (udpRemoteAddress != null)
+			udpConnections.remove(udpRemoteAddress, connection);
 
-		pendingConnections.remove(connection.id);
+		synchronized (pendingConnections) {
+			pendingConnections.remove(connection.id);
+		}
 	}
 
-	// BOZO - Provide mechanism for sending to multiple clients without
-	// serializing multiple times.
-
+	/**
+	 * Sends the object to all connections over TCP. The object is only
+	 * serialized once, unless its serialization depends on the connection (e.g.
+	 * for objects of an ObjectSpace).
+	 */
 	public void sendToAllTCP(Object object) {
-		Connection[] connections = this.connections;
+		Connection[] connections = this.connections.toArray();
+		ByteBuffer frame = connections.length > 1 ? encodeTCP(object) : null;
 		for (int i = 0, n = connections.length; i < n; i++) {
 			Connection connection = connections[i];
-			connection.sendTCP(object);
+			connection.sendTCP(object, frame);
 		}
 	}
 
+	/**
+	 * Sends the object to all connections except the one with the given ID
+	 * over TCP.
+	 * 
+	 * @see #sendToAllTCP(Object)
+	 */
 	public void sendToAllExceptTCP(int connectionID, Object object) {
-		Connection[] connections = this.connections;
+		Connection[] connections = this.connections.toArray();
+		ByteBuffer frame = connections.length > 1 ? encodeTCP(object) : null;
 		for (int i = 0, n = connections.length; i < n; i++) {
 			Connection connection = connections[i];
 			if (connection.id != connectionID)
-				connection.sendTCP(object);
+				connection.sendTCP(object, frame);
 		}
 	}
 
 	public void sendToTCP(int connectionID, Object object) {
-		Connection[] connections = this.connections;
-		for (int i = 0, n = connections.length; i < n; i++) {
-			Connection connection = connections[i];
-			if (connection.id == connectionID) {
-				connection.sendTCP(object);
-				break;
-			}
-		}
+		Connection connection = connections.get(connectionID);
+		if (connection != null)
+			connection.sendTCP(object);
 	}
 
+	/**
+	 * Sends the object to all connections over UDP. The object is only
+	 * serialized once, unless its serialization depends on the connection.
+	 */
 	public void sendToAllUDP(Object object) {
-		Connection[] connections = this.connections;
+		Connection[] connections = this.connections.toArray();
+		ByteBuffer datagram = connections.length > 1 && udp != null
+				&& !udpDeliveries.containsKey(object.getClass())
+						? encodeUDP(object)
+						: null;
 		for (int i = 0, n = connections.length; i < n; i++) {
 			Connection connection = connections[i];
-			connection.sendUDP(object);
+			connection.sendUDP(object, datagram);
 		}
 	}
 
+	/**
+	 * Sends the object to all connections except the one with the given ID
+	 * over UDP.
+	 * 
+	 * @see #sendToAllUDP(Object)
+	 */
 	public void sendToAllExceptUDP(int connectionID, Object object) {
-		Connection[] connections = this.connections;
+		Connection[] connections = this.connections.toArray();
+		ByteBuffer datagram = connections.length > 1 && udp != null
+				&& !udpDeliveries.containsKey(object.getClass())
+						? encodeUDP(object)
+						: null;
 		for (int i = 0, n = connections.length; i < n; i++) {
 			Connection connection = connections[i];
 			if (connection.id != connectionID)
-				connection.sendUDP(object);
+				connection.sendUDP(object, datagram);
 		}
 	}
 
 	public void sendToUDP(int connectionID, Object object) {
-		Connection[] connections = this.connections;
-		for (int i = 0, n = connections.length; i < n; i++) {
-			Connection connection = connections[i];
-			if (connection.id == connectionID) {
-				connection.sendUDP(object);
-				break;
-			}
+		Connection connection = connections.get(connectionID);
+		if (connection != null)
+			connection.sendUDP(object);
+	}
+
+	/**
+	 * Serializes the object and its length header into the TCP frame buffer of
+	 * the calling thread.
+	 * 
+	 * @return <code>null</code> if the object cannot be serialized without a
+	 *         connection and has to be serialized for every connection
+	 *         instead.
+	 */
+	private ByteBuffer encodeTCP(Object object) {
+		if (object == null)
+			return null;
+		ByteBuffer frame = tcpFrames.get();
+		frame.clear();
+		int lengthLength = serialization.getLengthLength();
+		try {
+			frame.position(lengthLength);
+			serialization.write(null, frame, object);
+		} catch (Throwable ex) {
+			if (TRACE)
+				trace("kryonet", "Unable to serialize object of type "
+						+ object.getClass().getName()
+						+ " once for all connections.", ex);
+			return null;
 		}
+		int end = frame.position();
+		frame.position(0);
+		serialization.writeLength(frame, end - lengthLength);
+		frame.position(0);
+		frame.limit(end);
+		return frame;
+	}
+
+	/**
+	 * Serializes the object into the UDP datagram buffer of the calling
+	 * thread.
+	 * 
+	 * @return <code>null</code> if the object cannot be serialized without a
+	 *         connection.
+	 * @see #encodeTCP(Object)
+	 */
+	private ByteBuffer encodeUDP(Object object) {
+		if (object == null)
+			return null;
+		ByteBuffer datagram = udpDatagrams.get();
+		datagram.clear();
+		try {
+			serialization.write(null, datagram, object);
+		} catch (Throwable ex) {
+			if (TRACE)
+				trace("kryonet", "Unable to serialize object of type "
+						+ object.getClass().getName()
+						+ " once for all connections.", ex);
+			return null;
+		}
+		datagram.flip();
+		return datagram;
 	}
 
 	/**
@@ -708,6 +1052,13 @@ public class Server implements EndPoint {
 			newListeners[0] = listener;
 			System.arraycopy(listeners, 0, newListeners, 1, n);
 			this.listeners = newListeners;
+			idleListener |= Connection.handlesIdle(listener);
+		}
+		// The connections are checked for the idle event from now on.
+		if (idleListener) {
+			Connection[] connections = this.connections.toArray();
+			for (int i = 0, n = connections.length; i < n; i++)
+				connections[i].markDirty();
 		}
 		if (TRACE)
 			trace("kryonet",
@@ -731,6 +1082,10 @@ public class Server implements EndPoint {
 				newListeners[ii++] = copyListener;
 			}
 			this.listeners = newListeners;
+			boolean idleListener = false;
+			for (int i = 0; i < newListeners.length; i++)
+				idleListener |= Connection.handlesIdle(newListeners[i]);
+			this.idleListener = idleListener;
 		}
 		if (TRACE)
 			trace("kryonet", "Server listener removed: "
@@ -742,7 +1097,7 @@ public class Server implements EndPoint {
 	 */
 	@Override
 	public void close() {
-		Connection[] connections = this.connections;
+		Connection[] connections = this.connections.toArray();
 		if (INFO && connections.length > 0)
 			info("kryonet", "Closing server connections...");
 		for (int i = 0, n = connections.length; i < n; i++)
@@ -768,6 +1123,12 @@ public class Server implements EndPoint {
 			this.udp = null;
 		}
 
+		ServerWorker[] workers = this.workers;
+		for (int i = 0, n = workers.length; i < n; i++)
+			if (workers[i] != null)
+				workers[i].stop();
+		this.workers = new ServerWorker[0];
+
 		synchronized (updateLock) { // Blocks to avoid a select while the
 									// selector is used to bind the server
 									// connection.
@@ -798,6 +1159,7 @@ public class Server implements EndPoint {
 	 * modified.
 	 */
 	public Collection<Connection> getConnections() {
-		return Collections.unmodifiableCollection(Arrays.asList(connections));
+		return Collections
+				.unmodifiableCollection(Arrays.asList(connections.toArray()));
 	}
 }
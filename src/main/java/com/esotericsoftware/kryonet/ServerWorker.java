@@ -0,0 +1,430 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static com.esotericsoftware.minlog.Log.DEBUG;
+import static com.esotericsoftware.minlog.Log.ERROR;
+import static com.esotericsoftware.minlog.Log.TRACE;
+import static com.esotericsoftware.minlog.Log.debug;
+import static com.esotericsoftware.minlog.Log.error;
+import static com.esotericsoftware.minlog.Log.trace;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A selector and the TCP connections registered with it. The server's update
+ * thread always drives one worker for the connections on its own selector.
+ * When {@linkplain Server#setWorkerCount(int) worker selectors} are enabled,
+ * new connections are instead handed to workers that each run their own read,
+ * write and keep alive loop on a separate thread.
+ */
+class ServerWorker implements Runnable {
+	static final int KEEP_ALIVE_TICK_MILLIS = 10;
+	/**
+	 * The keep alive and timeout of a connection are checked at least this
+	 * often, so changed {@linkplain Connection#setKeepAliveTCP(int) settings}
+	 * are picked up.
+	 */
+	static final int MAX_KEEP_ALIVE_DELAY = 1000;
+
+	final Server server;
+	final Selector selector;
+	final FlushQueue flushQueue;
+	/**
+	 * The sockets of this worker when the server
+	 * {@linkplain Server#setReusePort(boolean) reuses its ports}, else
+	 * <code>null</code>.
+	 */
+	ServerSocketChannel serverChannel;
+	UdpConnection udp;
+	/** Connections that received reliable UDP during the update. */
+	final ArrayList<Connection> udpAcks = new ArrayList<>();
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final TimerWheel<Connection> keepAliveWheel;
+	/** Connections that used up their read budget with objects left. */
+	private final ArrayDeque<Connection> pendingReads = new ArrayDeque<>();
+	/** Connections queued for the next sweep, see {@link #markDirty}. */
+	private final ConcurrentLinkedQueue<Connection> dirty = new ConcurrentLinkedQueue<>();
+	/** The dirty connections visited by the current sweep. */
+	private final ArrayList<Connection> sweeping = new ArrayList<>();
+	/** Closed connections whose buffers are returned by the next sweep. */
+	private final ConcurrentLinkedQueue<Connection> released = new ConcurrentLinkedQueue<>();
+	private int emptySelects;
+	/** When the next reliable UDP datagram is due to be resent, or 0. */
+	private long nextResendTime;
+	private volatile boolean shutdown;
+	private Thread thread;
+
+	ServerWorker(Server server, Selector selector) {
+		this.server = server;
+		this.selector = selector;
+		flushQueue = new FlushQueue(selector);
+		keepAliveWheel = new TimerWheel<Connection>(KEEP_ALIVE_TICK_MILLIS, 128,
+				System.currentTimeMillis()) {
+			@Override
+			protected long expired(Connection connection, long time) {
+				return checkKeepAlive(connection, time);
+			}
+		};
+	}
+
+	/**
+	 * Starts a new thread that calls {@link #run()}. Workers without a thread
+	 * are driven by {@link Server#update(int)}.
+	 */
+	void start(String name) {
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Runs the task on this worker's thread. Tasks for a worker without its own
+	 * thread are run immediately.
+	 */
+	void execute(Runnable task) {
+		if (thread == null || Thread.currentThread() == thread) {
+			task.run();
+			return;
+		}
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		if (TRACE)
+			trace("kryonet", "Server worker thread started.");
+		while (!shutdown) {
+			try {
+				update(250);
+			} catch (IOException ex) {
+				if (ERROR)
+					error("kryonet", "Error updating server worker.", ex);
+				server.close();
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to close worker selector.", ex);
+		}
+		if (TRACE)
+			trace("kryonet", "Server worker thread stopped.");
+	}
+
+	void stop() {
+		shutdown = true;
+		try {
+			if (serverChannel != null)
+				serverChannel.close();
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to close worker server channel.", ex);
+		}
+		if (udp != null)
+			udp.close();
+		selector.wakeup();
+	}
+
+	private void update(int timeout) throws IOException {
+		runTasks();
+		int selectTimeout = selectTimeout(timeout);
+		int select = server.waitStrategy.select(selector, selectTimeout,
+				selectTimeout == timeout ? emptySelects : 0);
+		runTasks();
+		if (select == 0) {
+			// A timeout shortened for lingering connections is expected.
+			if (selectTimeout == timeout && emptySelects < Integer.MAX_VALUE)
+				emptySelects++;
+		} else {
+			emptySelects = 0;
+			Set<SelectionKey> keys = selector.selectedKeys();
+			synchronized (keys) {
+				for (Iterator<SelectionKey> iter = keys.iterator(); iter
+						.hasNext();) {
+					SelectionKey selectionKey = iter.next();
+					iter.remove();
+					Connection connection = (Connection) selectionKey
+							.attachment();
+					try {
+						if (connection != null)
+							process(selectionKey, connection);
+						else
+							processShard(selectionKey);
+					} catch (CancelledKeyException ex) {
+						if (connection != null)
+							connection.close();
+					}
+				}
+			}
+			sendUdpAcks();
+		}
+		sweep(System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the timeout to select with so lingering connections are flushed
+	 * and reliable UDP datagrams are resent in time, and <code>0</code> if
+	 * connections have objects left to read.
+	 */
+	int selectTimeout(int timeout) {
+		if (!pendingReads.isEmpty())
+			return 0;
+		return ReliableUdp.selectTimeout(flushQueue.selectTimeout(timeout),
+				nextResendTime);
+	}
+
+	/**
+	 * Accepts a connection or reads the datagrams received by this worker's
+	 * own sockets.
+	 */
+	private void processShard(SelectionKey selectionKey) {
+		if ((selectionKey.readyOps()
+				& SelectionKey.OP_ACCEPT) == SelectionKey.OP_ACCEPT) {
+			try {
+				SocketChannel socketChannel = serverChannel.accept();
+				if (socketChannel != null)
+					server.acceptOperation(socketChannel, this);
+			} catch (IOException ex) {
+				if (DEBUG)
+					debug("kryonet", "Unable to accept new connection.", ex);
+			}
+		} else if (udp != null)
+			server.readUDP(udp, this);
+	}
+
+	/**
+	 * Acknowledges the reliable UDP received by all datagrams of an update at
+	 * once.
+	 */
+	void sendUdpAcks() {
+		for (int i = 0, n = udpAcks.size(); i < n; i++)
+			udpAcks.get(i).sendUdpAck();
+		udpAcks.clear();
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null)
+			task.run();
+	}
+
+	/**
+	 * Performs the TCP read and/or write operation the selection key is ready
+	 * for.
+	 */
+	void process(SelectionKey selectionKey, Connection fromConnection) {
+		int ops = selectionKey.readyOps();
+		if (closeIfUnregistered(fromConnection))
+			return;
+		if ((ops & SelectionKey.OP_READ) == SelectionKey.OP_READ)
+			read(fromConnection);
+		if ((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE) {
+			try {
+				fromConnection.tcp.writeOperation();
+				fromConnection.notifyWritabilityChanged();
+			} catch (IOException ex) {
+				if (TRACE) {
+					trace("kryonet", "Unable to write TCP to connection: "
+							+ fromConnection, ex);
+				} else if (DEBUG) {
+					debug("kryonet",
+							fromConnection + " update: " + ex.getMessage());
+				}
+				fromConnection.close();
+			}
+		}
+	}
+
+	/**
+	 * Closes the connection if the server has UDP but the connection did not
+	 * register its UDP address yet.
+	 * 
+	 * @return true if the connection was closed.
+	 */
+	private boolean closeIfUnregistered(Connection connection) {
+		if (server.udp == null || connection.udpRemoteAddress != null)
+			return false;
+		connection.close();
+		return true;
+	}
+
+	/**
+	 * Reads and notifies up to the {@linkplain Server#setReadBudget(int) read
+	 * budget} of objects from the connection. A connection with objects left
+	 * is read again by the sweep, after the other connections that are ready,
+	 * so a connection flooding small objects cannot delay the others of this
+	 * worker for long.
+	 */
+	private void read(Connection fromConnection) {
+		try {
+			int budget = server.readBudget;
+			while (true) {
+				if (budget-- == 0) {
+					// The selector does not report the objects left in the
+					// read buffer.
+					if (!fromConnection.readPending) {
+						fromConnection.readPending = true;
+						pendingReads.add(fromConnection);
+					}
+					break;
+				}
+				Object object = fromConnection.tcp.readObject(fromConnection);
+				if (object == null)
+					break;
+				if (object == DecodeQueue.QUEUED)
+					continue;
+				if (DEBUG) {
+					String objectString = object == null ? "null"
+							: object.getClass().getSimpleName();
+					if (!(object instanceof FrameworkMessage)) {
+						debug("kryonet", fromConnection + " received TCP: "
+								+ objectString);
+					} else if (TRACE) {
+						trace("kryonet", fromConnection + " received TCP: "
+								+ objectString);
+					}
+				}
+				fromConnection.notifyReceived(object);
+			}
+		} catch (IOException ex) {
+			if (TRACE) {
+				trace("kryonet", "Unable to read TCP from: " + fromConnection,
+						ex);
+			} else if (DEBUG) {
+				debug("kryonet", fromConnection + " update: " + ex.getMessage());
+			}
+			fromConnection.close();
+		} catch (KryoNetException ex) {
+			if (ERROR)
+				error("kryonet",
+						"Error reading TCP from connection: " + fromConnection,
+						ex);
+			fromConnection.close();
+		}
+	}
+
+	/**
+	 * Runs the work that is due with this update. Every sweep reads the
+	 * connections that had objects left, releases the buffers of removed
+	 * connections and flushes the lingering connections that are due. The
+	 * keep alive wheel closes timed out connections and sends keep alives, only
+	 * for the connections that are due. Only the
+	 * {@linkplain #markDirty(Connection) dirty} connections send chunks and
+	 * packed UDP datagrams, resend reliable UDP datagrams and fire the idle
+	 * event. A connection with a listener that handles the idle event stays
+	 * dirty, so it is checked for each update. The cost of a sweep grows only
+	 * with the number of these connections.
+	 */
+	void sweep(long time) {
+		Connection connection;
+		for (int i = pendingReads.size(); i > 0; i--) {
+			connection = pendingReads.poll();
+			connection.readPending = false;
+			if (connection.isConnected && !closeIfUnregistered(connection))
+				read(connection);
+		}
+		while ((connection = released.poll()) != null)
+			connection.tcp.releaseBuffers();
+		flushQueue.flush(time);
+		keepAliveWheel.advance(time);
+		// Connections marked while they are visited wait for the next sweep.
+		while ((connection = dirty.poll()) != null)
+			sweeping.add(connection);
+		long nextResendTime = 0;
+		for (int i = 0, n = sweeping.size(); i < n; i++) {
+			connection = sweeping.get(i);
+			connection.sweepPending.set(false);
+			if (!connection.isConnected)
+				continue;
+			connection.sendChunks();
+			connection.flushUDP();
+			long resendTime = connection.resendUDP(time);
+			if (resendTime != 0
+					&& (nextResendTime == 0 || resendTime < nextResendTime))
+				nextResendTime = resendTime;
+			if (connection.isIdle())
+				connection.notifyIdle();
+			if (resendTime != 0 || connection.tcp.hasChunks()
+					|| connection.handlesIdle())
+				markDirty(connection);
+		}
+		sweeping.clear();
+		this.nextResendTime = nextResendTime;
+	}
+
+	/**
+	 * Queues the connection for the next sweep, after its write state changed
+	 * or while it has chunks to send, reliable UDP datagrams that are not
+	 * acknowledged or an idle listener. This method is thread-safe.
+	 */
+	void markDirty(Connection connection) {
+		if (connection.sweepPending.compareAndSet(false, true))
+			dirty.add(connection);
+	}
+
+	/**
+	 * Called by the keep alive wheel when the connection is due.
+	 * 
+	 * @return The time the connection is due next or <code>-1</code> if it
+	 *         was closed.
+	 */
+	private long checkKeepAlive(Connection connection, long time) {
+		if (!connection.isConnected)
+			return -1;
+		TcpConnection tcp = connection.tcp;
+		if (tcp.isTimedOut(time)) {
+			if (DEBUG)
+				debug("kryonet", connection + " timed out.");
+			connection.close();
+			return -1;
+		}
+		if (tcp.needsKeepAlive(time))
+			connection.sendTCP(FrameworkMessage.keepAlive);
+		return Math.min(tcp.nextKeepAliveCheck(),
+				time + MAX_KEEP_ALIVE_DELAY);
+	}
+
+	void addConnection(Connection connection) {
+		keepAliveWheel.schedule(connection, System.currentTimeMillis());
+		markDirty(connection);
+	}
+
+	/**
+	 * The connection is removed from the keep alive wheel once it is due. Its
+	 * buffers are released on this worker's thread, which may still be
+	 * reading from the connection. This method is thread-safe.
+	 */
+	void removeConnection(Connection connection) {
+		released.add(connection);
+	}
+}
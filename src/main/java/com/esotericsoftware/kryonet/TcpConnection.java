@@ -29,9 +29,11 @@ import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.esotericsoftware.kryonet.serialization.Serialization;
 
@@ -42,7 +44,21 @@ class TcpConnection {
 
 	SocketChannel socketChannel;
 	int keepAliveMillis = 8000;
-	final ByteBuffer readBuffer, writeBuffer;
+	final ByteBuffer readBuffer;
+	/**
+	 * Null when the {@link #writeQueue} is used or the buffers were
+	 * {@linkplain #releaseBuffers() released}.
+	 */
+	ByteBuffer writeBuffer;
+	/**
+	 * The pool the read and write buffers were obtained from, or
+	 * <code>null</code>.
+	 */
+	private final BufferPool bufferPool;
+	/** The pooled buffers backing the read and write buffers. */
+	private ByteBuffer pooledReadBuffer, pooledWriteBuffer;
+	WriteQueue writeQueue;
+	final int writeBufferSize;
 	boolean bufferPositionFix;
 	int timeoutMillis = 12000;
 	float idleThreshold = 0.1f;
@@ -52,21 +68,96 @@ class TcpConnection {
 	private volatile long lastWriteTime, lastReadTime;
 	private int currentObjectLength;
 	private final Object writeLock = new Object();
+	int lingerMillis;
+	FlushQueue flushQueue;
+	/** True while OP_WRITE is set because the socket was not writable. */
+	private boolean writePending;
+	/** True while the queued bytes wait for the linger time to pass. */
+	private boolean lingering;
+	private boolean inFlushQueue;
+	volatile long flushTime;
+	/** The maximum number of chunks sent per update. */
+	static final int MAX_CHUNKS_PER_UPDATE = 16;
+	int chunkSize = 1024;
+	int maxChunkedSize = 16 * 1024 * 1024;
+	/** Serialized objects to send in chunks, the first is being sent. */
+	private final ConcurrentLinkedQueue<ByteBuffer> chunkedObjects = new ConcurrentLinkedQueue<>();
+	/** The object whose chunks are being received, or null. */
+	private ByteBuffer chunkedObject;
+	private boolean currentChunk;
+	/**
+	 * Files waiting to be sent without a write queue, after the
+	 * {@link #transfer} being sent.
+	 */
+	private final ConcurrentLinkedQueue<Transfer> transfers = new ConcurrentLinkedQueue<>();
+	/**
+	 * The file being sent. Only accessed while holding the write lock, or by
+	 * the selector thread with a write queue.
+	 */
+	private Transfer transfer;
+	/** The file being received, only accessed by the selector thread. */
+	private Transfer receiving;
+	FileReceiver fileReceiver;
+	/**
+	 * Null when objects are deserialized by the selector thread, see
+	 * {@link Server#setDecodeExecutor(java.util.concurrent.Executor)}.
+	 */
+	DecodeQueue decodeQueue;
 
 	public TcpConnection(Serialization serialization, int writeBufferSize,
-			int objectBufferSize) {
+			int objectBufferSize, WriteQueue writeQueue) {
+		this(serialization, writeBufferSize, objectBufferSize, writeQueue,
+				null);
+	}
+
+	/**
+	 * @param writeQueue
+	 *            Queues the bytes to write instead of a write buffer, or
+	 *            <code>null</code>.
+	 * @param bufferPool
+	 *            Provides the read and write buffers, or <code>null</code> to
+	 *            allocate them. The buffers must be returned with
+	 *            {@link #releaseBuffers()}.
+	 */
+	TcpConnection(Serialization serialization, int writeBufferSize,
+			int objectBufferSize, WriteQueue writeQueue,
+			BufferPool bufferPool) {
 		this.serialization = serialization;
-		writeBuffer = ByteBuffer.allocate(writeBufferSize);
-		readBuffer = ByteBuffer.allocate(objectBufferSize);
+		this.writeBufferSize = writeBufferSize;
+		this.writeQueue = writeQueue;
+		this.bufferPool = bufferPool;
+		if (bufferPool == null) {
+			if (writeQueue == null)
+				writeBuffer = ByteBuffer.allocate(writeBufferSize);
+			readBuffer = ByteBuffer.allocate(objectBufferSize);
+		} else {
+			if (writeQueue == null) {
+				pooledWriteBuffer = bufferPool.obtain(writeBufferSize);
+				writeBuffer = slice(pooledWriteBuffer, writeBufferSize);
+			}
+			pooledReadBuffer = bufferPool.obtain(objectBufferSize);
+			readBuffer = slice(pooledReadBuffer, objectBufferSize);
+		}
 		readBuffer.flip();
 	}
 
+	/**
+	 * Returns a buffer of exactly the size backed by the larger pooled
+	 * buffer, so the capacity checks stay the same as with allocated buffers.
+	 */
+	private static ByteBuffer slice(ByteBuffer pooled, int size) {
+		pooled.limit(size);
+		return pooled.slice();
+	}
+
 	public SelectionKey accept(Selector selector, SocketChannel socketChannel)
 			throws IOException {
-		writeBuffer.clear();
+		clearWriteBuffer();
 		readBuffer.clear();
 		readBuffer.flip();
 		currentObjectLength = 0;
+		chunkedObject = null;
+		receiving = null;
 		try {
 			this.socketChannel = socketChannel;
 			socketChannel.configureBlocking(false);
@@ -94,10 +185,12 @@ class TcpConnection {
 	public void connect(Selector selector, SocketAddress remoteAddress,
 			int timeout) throws IOException {
 		close();
-		writeBuffer.clear();
+		clearWriteBuffer();
 		readBuffer.clear();
 		readBuffer.flip();
 		currentObjectLength = 0;
+		chunkedObject = null;
+		receiving = null;
 		try {
 			SocketChannel socketChannel = selector.provider()
 					.openSocketChannel();
@@ -126,15 +219,120 @@ class TcpConnection {
 		}
 	}
 
+	/**
+	 * Switches between the write buffer and a write queue. Must not be called
+	 * while connected.
+	 */
+	void setWriteQueue(WriteQueue writeQueue) {
+		synchronized (writeLock) {
+			if (this.writeQueue != null)
+				this.writeQueue.reset();
+			this.writeQueue = writeQueue;
+			writeBuffer = writeQueue == null
+					? ByteBuffer.allocate(writeBufferSize)
+					: null;
+		}
+	}
+
+	/**
+	 * Returns the pooled buffers and any queued frames to the buffer pool.
+	 * Called on the selector thread once the connection is closed, since the
+	 * read buffer is only used on that thread. A connection with pooled
+	 * buffers cannot be connected again.
+	 */
+	void releaseBuffers() {
+		synchronized (writeLock) {
+			if (writeQueue != null)
+				writeQueue.reset();
+			if (pooledWriteBuffer != null) {
+				writeBuffer = null;
+				bufferPool.free(pooledWriteBuffer);
+				pooledWriteBuffer = null;
+			}
+			if (pooledReadBuffer != null) {
+				bufferPool.free(pooledReadBuffer);
+				pooledReadBuffer = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the write buffer. Must be called while holding the write lock.
+	 */
+	private ByteBuffer writeBuffer() throws SocketException {
+		ByteBuffer writeBuffer = this.writeBuffer;
+		if (writeBuffer == null)
+			throw new SocketException("Connection is closed.");
+		return writeBuffer;
+	}
+
+	private void clearWriteBuffer() {
+		synchronized (writeLock) {
+			writePending = false;
+			lingering = false;
+			transfer = null;
+			if (writeQueue != null)
+				writeQueue.reset();
+			else
+				writeBuffer.clear();
+		}
+	}
+
+	/**
+	 * Returns the next object, <code>null</code> if no complete object was
+	 * read yet, or {@link DecodeQueue#QUEUED} if the frame was queued to be
+	 * decoded.
+	 */
 	public Object readObject(Connection connection) throws IOException {
 		SocketChannel socketChannel = this.socketChannel;
 		if (socketChannel == null)
 			throw new SocketException("Connection is closed.");
 
-		if (currentObjectLength == 0) {
-			// Read the length of the next object from the socket.
-			int lengthLength = serialization.getLengthLength();
-			if (readBuffer.remaining() < lengthLength) {
+		while (true) {
+			if (receiving != null) {
+				boolean received = receiving.read(readBuffer, socketChannel);
+				lastReadTime = System.currentTimeMillis();
+				if (!received)
+					return null;
+				Transfer transfer = receiving;
+				receiving = null;
+				if (transfer.file != null)
+					fileReceiver.received(connection, transfer.descriptor,
+							transfer.file);
+			}
+
+			if (currentObjectLength == 0) {
+				// Read the length of the next object from the socket.
+				int lengthLength = serialization.getLengthLength();
+				if (readBuffer.remaining() < lengthLength) {
+					readBuffer.compact();
+					int bytesRead = socketChannel.read(readBuffer);
+					readBuffer.flip();
+					if (bytesRead == -1)
+						throw new SocketException("Connection is closed.");
+					lastReadTime = System.currentTimeMillis();
+
+					if (readBuffer.remaining() < lengthLength)
+						return null;
+				}
+				currentObjectLength = serialization.readLength(readBuffer);
+
+				// A negative length marks a chunk of a larger object.
+				currentChunk = currentObjectLength < 0;
+				if (currentChunk)
+					currentObjectLength = -currentObjectLength;
+				if (currentObjectLength <= 0)
+					throw new KryoNetException(
+							"Invalid object length: " + currentObjectLength);
+				if (currentObjectLength > readBuffer.capacity())
+					throw new KryoNetException(
+							"Unable to read object larger than read buffer: "
+									+ currentObjectLength);
+			}
+
+			int length = currentObjectLength;
+			if (readBuffer.remaining() < length) {
+				// Fill the tcpInputStream.
 				readBuffer.compact();
 				int bytesRead = socketChannel.read(readBuffer);
 				readBuffer.flip();
@@ -142,146 +340,602 @@ class TcpConnection {
 					throw new SocketException("Connection is closed.");
 				lastReadTime = System.currentTimeMillis();
 
-				if (readBuffer.remaining() < lengthLength)
+				if (readBuffer.remaining() < length)
 					return null;
 			}
-			currentObjectLength = serialization.readLength(readBuffer);
+			currentObjectLength = 0;
 
-			if (currentObjectLength <= 0)
-				throw new KryoNetException(
-						"Invalid object length: " + currentObjectLength);
-			if (currentObjectLength > readBuffer.capacity())
-				throw new KryoNetException(
-						"Unable to read object larger than read buffer: "
-								+ currentObjectLength);
+			if (!currentChunk) {
+				if (decodeQueue == null)
+					return deserialize(connection, readBuffer, length);
+				decodeQueue.add(readBuffer, length);
+				return DecodeQueue.QUEUED;
+			}
+			int lengthLength = serialization.getLengthLength();
+			if (length < lengthLength)
+				throw new KryoNetException("Invalid chunk length: " + length);
+			int totalLength = serialization.readLength(readBuffer);
+			length -= lengthLength;
+			if (totalLength == Transfer.HEADER) {
+				receiving = openTransfer(connection, length);
+				continue;
+			}
+			ByteBuffer chunkedObject = readChunk(totalLength, length);
+			if (chunkedObject == null)
+				continue;
+			if (decodeQueue == null)
+				return deserialize(connection, chunkedObject,
+						chunkedObject.remaining());
+			decodeQueue.addFrame(chunkedObject);
+			return DecodeQueue.QUEUED;
 		}
+	}
 
-		int length = currentObjectLength;
-		if (readBuffer.remaining() < length) {
-			// Fill the tcpInputStream.
-			readBuffer.compact();
-			int bytesRead = socketChannel.read(readBuffer);
-			readBuffer.flip();
-			if (bytesRead == -1)
-				throw new SocketException("Connection is closed.");
-			lastReadTime = System.currentTimeMillis();
+	/**
+	 * Reads the header of a file sent by the remote end and asks the
+	 * {@link #fileReceiver} where to write it.
+	 */
+	private Transfer openTransfer(Connection connection, int length)
+			throws IOException {
+		if (length < 8)
+			throw new KryoNetException("Invalid transfer header: " + length);
+		long count = readBuffer.getLong();
+		Object descriptor = deserialize(connection, readBuffer, length - 8);
+		if (count < 0)
+			throw new KryoNetException("Invalid transfer length: " + count);
+		FileReceiver fileReceiver = this.fileReceiver;
+		FileChannel file = fileReceiver == null ? null
+				: fileReceiver.open(connection, descriptor, count);
+		if (DEBUG)
+			debug("kryonet", connection + " receiving file: " + descriptor
+					+ " (" + count + ")" + (file == null ? ", skipped" : ""));
+		return new Transfer(descriptor, file, count);
+	}
 
-			if (readBuffer.remaining() < length)
-				return null;
+	/**
+	 * Adds a chunk from the read buffer to the chunked object being received.
+	 * 
+	 * @return The complete chunked object, or <code>null</code> if more chunks
+	 *         are needed.
+	 */
+	private ByteBuffer readChunk(int totalLength, int length) {
+		ByteBuffer chunkedObject = this.chunkedObject;
+		if (chunkedObject == null) {
+			if (totalLength <= 0 || totalLength > maxChunkedSize)
+				throw new KryoNetException(
+						"Invalid chunked object length: " + totalLength);
+			// Only allocated while the object is being received.
+			chunkedObject = this.chunkedObject = ByteBuffer
+					.allocate(totalLength);
 		}
-		currentObjectLength = 0;
+		if (totalLength != chunkedObject.capacity()
+				|| length > chunkedObject.remaining())
+			throw new KryoNetException("Invalid chunk of " + length
+					+ " bytes for chunked object: " + totalLength);
+		int limit = readBuffer.limit();
+		readBuffer.limit(readBuffer.position() + length);
+		chunkedObject.put(readBuffer);
+		readBuffer.limit(limit);
+		if (chunkedObject.hasRemaining())
+			return null;
+		this.chunkedObject = null;
+		chunkedObject.flip();
+		return chunkedObject;
+	}
 
-		int startPosition = readBuffer.position();
-		int oldLimit = readBuffer.limit();
-		readBuffer.limit(startPosition + length);
+	/** This method is thread-safe if the serialization is. */
+	Object deserialize(Connection connection, ByteBuffer buffer, int length) {
+		int startPosition = buffer.position();
+		int oldLimit = buffer.limit();
+		buffer.limit(startPosition + length);
 		Object object;
 		try {
-			object = serialization.read(connection, readBuffer);
+			object = serialization.read(connection, buffer);
 		} catch (Exception ex) {
 			throw new KryoNetException("Error during deserialization.", ex);
 		}
 
-		readBuffer.limit(oldLimit);
-		if (readBuffer.position() - startPosition != length)
+		buffer.limit(oldLimit);
+		if (buffer.position() - startPosition != length)
 			throw new KryoNetException("Incorrect number of bytes ("
-					+ (startPosition + length - readBuffer.position())
+					+ (startPosition + length - buffer.position())
 					+ " remaining) used to deserialize object: " + object);
 
 		return object;
 	}
 
 	public void writeOperation() throws IOException {
+		if (writeQueue != null) {
+			drain();
+			lastWriteTime = System.currentTimeMillis();
+			return;
+		}
 		synchronized (writeLock) {
 			if (writeToSocket()) {
 				// Write successful, clear OP_WRITE.
 				selectionKey.interestOps(SelectionKey.OP_READ);
+				writePending = false;
 			}
 			lastWriteTime = System.currentTimeMillis();
 		}
 	}
 
+	/**
+	 * Writes the queued frames and the files sent between them. A file is
+	 * started once the frames queued before it are written, and the frames
+	 * queued meanwhile are written after it.
+	 */
 	private boolean writeToSocket() throws IOException {
 		SocketChannel socketChannel = this.socketChannel;
 		if (socketChannel == null)
 			throw new SocketException("Connection is closed.");
+		while (true) {
+			if (transfer != null) {
+				if (!transfer.write(socketChannel))
+					return false;
+				transfer = null;
+			}
+			if (!writeFrames(socketChannel))
+				return false;
+			transfer = writeQueue != null ? writeQueue.takeTransfer()
+					: transfers.poll();
+			if (transfer == null)
+				return true;
+		}
+	}
+
+	private boolean writeFrames(SocketChannel socketChannel)
+			throws IOException {
+		if (writeQueue != null)
+			return writeQueue.write(socketChannel);
 
-		ByteBuffer buffer = writeBuffer;
+		// Only the bytes before the next file are written.
+		ByteBuffer buffer = writeBuffer();
+		Transfer next = transfers.peek();
+		int count = next != null ? next.frameBytes : buffer.position();
 		buffer.flip();
-		while (buffer.hasRemaining()) {
+		int end = buffer.limit();
+		while (count > 0) {
 			if (bufferPositionFix) {
 				buffer.compact();
 				buffer.flip();
+				end = buffer.limit();
 			}
-			if (socketChannel.write(buffer) == 0)
+			buffer.limit(buffer.position() + count);
+			int written = socketChannel.write(buffer);
+			buffer.limit(end);
+			if (written == 0)
 				break;
+			count -= written;
 		}
 		buffer.compact();
 
+		if (next != null) {
+			next.frameBytes = count;
+			return count == 0;
+		}
 		return buffer.position() == 0;
 	}
 
+	/**
+	 * Writes the frames of the write queue until it is empty or the socket is
+	 * not writable. Only called on the selector thread.
+	 */
+	private void drain() throws IOException {
+		while (true) {
+			if (!writeToSocket()) {
+				// A partial write, set OP_WRITE to be notified when more
+				// writing can occur. The queue stays scheduled until then.
+				if (!writePending) {
+					writePending = true;
+					selectionKey.interestOps(
+							SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+				return;
+			}
+			if (writePending) {
+				writePending = false;
+				selectionKey.interestOps(SelectionKey.OP_READ);
+			}
+			writeQueue.scheduled.set(false);
+			// A frame queued before the flag was cleared must not be missed.
+			if (writeQueue.isEmpty()
+					|| !writeQueue.scheduled.compareAndSet(false, true))
+				return;
+		}
+	}
+
 	/**
 	 * Sends the given object via this connection. The object is serialized by
 	 * the specified {@link #serialization}.
 	 * <p>
-	 * This method is thread-safe.
+	 * This method is thread-safe. With a write queue, it does not lock: the
+	 * object is serialized on the calling thread and the selector thread
+	 * writes it.
 	 * 
 	 * @param connection
 	 * @param object
 	 *            the object to send.
+	 * @param flush
+	 *            If false, the bytes are only queued until the next
+	 *            {@link #flush(Connection)} or flushing send.
 	 */
-	public int send(Connection connection, Object object) throws IOException {
+	public int send(Connection connection, Object object, boolean flush)
+			throws IOException {
 		SocketChannel socketChannel = this.socketChannel;
 		if (socketChannel == null)
 			throw new SocketException("Connection is closed.");
+		if (writeQueue != null)
+			return queued(connection, enqueue(connection, object), flush);
 		synchronized (writeLock) {
+			return queued(connection,
+					serialize(connection, object, writeBuffer()), flush);
+		}
+	}
 
-			int start = writeBuffer.position();
-			int lengthLength = serialization.getLengthLength();
+	/**
+	 * Sends the objects while holding the write lock once, or without locking
+	 * with a write queue, and schedules a single write for them.
+	 * <p>
+	 * This method is thread-safe.
+	 */
+	public int send(Connection connection, Object[] objects)
+			throws IOException {
+		SocketChannel socketChannel = this.socketChannel;
+		if (socketChannel == null)
+			throw new SocketException("Connection is closed.");
+		int length = 0;
+		if (writeQueue != null) {
+			for (int i = 0, n = objects.length; i < n; i++)
+				length += enqueue(connection, objects[i]);
+			return queued(connection, length, true);
+		}
+		synchronized (writeLock) {
+			for (int i = 0, n = objects.length; i < n; i++)
+				length += serialize(connection, objects[i], writeBuffer());
+			return queued(connection, length, true);
+		}
+	}
 
-			try {
-				// Leave room for length.
-				writeBuffer.position(writeBuffer.position() + lengthLength);
+	/**
+	 * Serializes the object into the frame buffer of the calling thread and
+	 * adds the frame to the write queue.
+	 */
+	private int enqueue(Connection connection, Object object) {
+		ByteBuffer frame = writeQueue.pool.frame();
+		int length = serialize(connection, object, frame);
+		frame.flip();
+		writeQueue.add(frame);
+		return length;
+	}
 
-				// Write data.
-				serialization.write(connection, writeBuffer, object);
-			} catch (Throwable ex) {
-				throw new KryoNetException("Error serializing object of type: "
-						+ object.getClass().getName(), ex);
-			}
-			int end = writeBuffer.position();
+	/**
+	 * Serializes the object and its length to the buffer.
+	 * 
+	 * @return The number of bytes written.
+	 */
+	private int serialize(Connection connection, Object object,
+			ByteBuffer buffer) {
+		int start = buffer.position();
+		int lengthLength = serialization.getLengthLength();
 
-			// Write data length.
-			writeBuffer.position(start);
-			serialization.writeLength(writeBuffer, end - lengthLength - start);
-			writeBuffer.position(end);
+		try {
+			// Leave room for length.
+			buffer.position(buffer.position() + lengthLength);
+
+			// Write data.
+			serialization.write(connection, buffer, object);
+		} catch (Throwable ex) {
+			throw new KryoNetException("Error serializing object of type: "
+					+ object.getClass().getName(), ex);
+		}
+		int end = buffer.position();
 
-			// Write to socket if no data was queued.
-			if (start == 0 && !writeToSocket()) {
-				// A partial write, set OP_WRITE to be notified when more
-				// writing can occur.
-				selectionKey.interestOps(
-						SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-			} else {
-				// Full write, wake up selector so idle event will be fired.
-				selectionKey.selector().wakeup();
+		// Write data length.
+		buffer.position(start);
+		serialization.writeLength(buffer, end - lengthLength - start);
+		buffer.position(end);
+		return end - start;
+	}
+
+	/**
+	 * Sends a frame that was already serialized, including the length header.
+	 * This allows the same bytes to be sent to many connections, see
+	 * {@link Server#sendToAllTCP(Object)}.
+	 * <p>
+	 * This method is thread-safe.
+	 * 
+	 * @param frame
+	 *            the bytes between its position and limit are sent. The
+	 *            buffer itself is not modified.
+	 */
+	public int send(Connection connection, ByteBuffer frame)
+			throws IOException {
+		SocketChannel socketChannel = this.socketChannel;
+		if (socketChannel == null)
+			throw new SocketException("Connection is closed.");
+		int length = frame.remaining();
+		if (writeQueue != null) {
+			writeQueue.add(frame.duplicate());
+			return queued(connection, length, true);
+		}
+		synchronized (writeLock) {
+			ByteBuffer writeBuffer = writeBuffer();
+			if (writeBuffer.remaining() < length)
+				throw new KryoNetException("Write buffer overflow, "
+						+ writeBuffer.remaining() + " bytes available for "
+						+ length + " bytes.");
+			writeBuffer.put(frame.duplicate());
+			return queued(connection, length, true);
+		}
+	}
+
+	/**
+	 * Serializes an object of up to {@link #maxChunkedSize} bytes, which is
+	 * then sent in chunks by {@link #sendChunks(Connection)}.
+	 * <p>
+	 * This method is thread-safe.
+	 * 
+	 * @return The number of bytes serialized.
+	 */
+	public int sendChunked(Connection connection, Object object)
+			throws IOException {
+		SocketChannel socketChannel = this.socketChannel;
+		if (socketChannel == null)
+			throw new SocketException("Connection is closed.");
+		ByteBuffer bytes;
+		try {
+			bytes = serialization.write(connection, object, maxChunkedSize);
+		} catch (Throwable ex) {
+			throw new KryoNetException("Error serializing object of type: "
+					+ object.getClass().getName(), ex);
+		}
+		chunkedObjects.add(bytes);
+		selectionKey.selector().wakeup();
+		return bytes.limit();
+	}
+
+	/** Wakes up the selector thread of this connection. */
+	void wakeup() {
+		SelectionKey selectionKey = this.selectionKey;
+		if (selectionKey != null)
+			selectionKey.selector().wakeup();
+	}
+
+	boolean hasChunks() {
+		return !chunkedObjects.isEmpty();
+	}
+
+	/**
+	 * Sends the next chunks of the chunked objects while the write buffer or
+	 * queue is below the idle threshold. Each chunk is a separate frame, so
+	 * objects sent meanwhile are written between the chunks. Called on the
+	 * selector thread for each update while chunks are left.
+	 */
+	void sendChunks(Connection connection) throws IOException {
+		int lengthLength = serialization.getLengthLength();
+		int maxLength = Math.min(chunkSize,
+				writeBufferSize / 2 - lengthLength * 2);
+		if (maxLength <= 0)
+			throw new KryoNetException(
+					"Write buffer too small to send chunks: "
+							+ writeBufferSize);
+		ByteBuffer frame = null;
+		for (int i = 0; i < MAX_CHUNKS_PER_UPDATE; i++) {
+			ByteBuffer bytes = chunkedObjects.peek();
+			if (bytes == null || getWriteUtilization() >= idleThreshold)
+				return;
+			if (frame == null)
+				frame = ByteBuffer.allocate(maxLength + lengthLength * 2);
+			int length = Math.min(bytes.remaining(), maxLength);
+			frame.clear();
+			serialization.writeLength(frame, -(lengthLength + length));
+			serialization.writeLength(frame, bytes.limit());
+			int limit = bytes.limit();
+			bytes.limit(bytes.position() + length);
+			frame.put(bytes);
+			bytes.limit(limit);
+			frame.flip();
+			send(connection, frame);
+			if (!bytes.hasRemaining())
+				chunkedObjects.poll();
+		}
+	}
+
+	/**
+	 * Sends count bytes of the file from the position, or the remaining bytes
+	 * of the buffer if the file is null, after the frames queued so far. A
+	 * header frame with the descriptor is sent first. The file is closed once
+	 * it is sent or the connection is closed.
+	 * <p>
+	 * This method is thread-safe.
+	 */
+	public void sendFile(Connection connection, Object descriptor,
+			FileChannel file, long position, long count, ByteBuffer buffer)
+			throws IOException {
+		SocketChannel socketChannel = this.socketChannel;
+		if (socketChannel == null)
+			throw new SocketException("Connection is closed.");
+		ByteBuffer bytes;
+		try {
+			bytes = serialization.write(connection, descriptor,
+					readBuffer.capacity());
+		} catch (Throwable ex) {
+			throw new KryoNetException("Error serializing descriptor: "
+					+ descriptor, ex);
+		}
+		int lengthLength = serialization.getLengthLength();
+		int length = lengthLength + 8 + bytes.limit();
+		ByteBuffer header = ByteBuffer.allocate(lengthLength + length);
+		serialization.writeLength(header, -length);
+		serialization.writeLength(header, Transfer.HEADER);
+		header.putLong(count);
+		header.put(bytes);
+		header.flip();
+		Transfer transfer = new Transfer(header, file, position, count,
+				buffer);
+		if (writeQueue != null) {
+			writeQueue.add(transfer);
+			scheduleWrite(connection, false);
+			return;
+		}
+		synchronized (writeLock) {
+			if (writeBuffer == null) {
+				transfer.close();
+				throw new SocketException("Connection is closed.");
 			}
+			int frameBytes = writeBuffer.position();
+			for (Transfer queued : transfers)
+				frameBytes -= queued.frameBytes;
+			transfer.frameBytes = frameBytes;
+			transfers.add(transfer);
+			scheduleWrite(connection, false);
+		}
+	}
 
-			if (DEBUG || TRACE) {
-				float percentage = writeBuffer.position()
-						/ (float) writeBuffer.capacity();
-				if (DEBUG && percentage > 0.75f)
-					debug("kryonet",
-							" TCP write buffer is approaching capacity: "
-									+ percentage + "%");
-				else if (TRACE && percentage > 0.25f)
-					trace("kryonet", " TCP write buffer utilization: "
-							+ percentage + "%");
+	/**
+	 * Writes the queued bytes now, even if the connection lingers.
+	 * <p>
+	 * This method is thread-safe.
+	 */
+	public void flush(Connection connection) throws IOException {
+		SocketChannel socketChannel = this.socketChannel;
+		if (socketChannel == null)
+			throw new SocketException("Connection is closed.");
+		if (writeQueue != null) {
+			scheduleWrite(connection, false);
+			return;
+		}
+		synchronized (writeLock) {
+			scheduleWrite(connection, false);
+		}
+	}
+
+	/**
+	 * Called by the {@link FlushQueue} on the selector thread once the linger
+	 * time may have passed.
+	 */
+	void lingered(Connection connection, long time) throws IOException {
+		if (writeQueue != null) {
+			// Otherwise the entry is stale, the queue was scheduled again.
+			if (flushTime <= time)
+				drain();
+			return;
+		}
+		synchronized (writeLock) {
+			inFlushQueue = false;
+			if (!lingering || socketChannel == null)
+				return;
+			if (flushTime > time) {
+				inFlushQueue = true;
+				flushQueue.add(connection, flushTime);
+				return;
 			}
+			scheduleWrite(connection, false);
+		}
+	}
 
-			lastWriteTime = System.currentTimeMillis();
-			return end - start;
+	/**
+	 * Called after length bytes were added to the write buffer or queue. Must
+	 * be called while holding the write lock, unless a write queue is used.
+	 */
+	private int queued(Connection connection, int length, boolean flush)
+			throws IOException {
+		if (flush)
+			scheduleWrite(connection, true);
+
+		if (DEBUG || TRACE) {
+			float percentage = getWriteUtilization();
+			if (DEBUG && percentage > 0.75f)
+				debug("kryonet", " TCP write buffer is approaching capacity: "
+						+ percentage + "%");
+			else if (TRACE && percentage > 0.25f)
+				trace("kryonet",
+						" TCP write buffer utilization: " + percentage + "%");
 		}
+
+		lastWriteTime = System.currentTimeMillis();
+		return length;
+	}
+
+	/**
+	 * Makes sure the queued bytes are written: now, after the linger time or,
+	 * if the socket is not writable, once the selector reports OP_WRITE. A
+	 * write queue is always written by the selector thread, see
+	 * {@link #drain()}. Must be called while holding the write lock, unless a
+	 * write queue is used.
+	 */
+	private void scheduleWrite(Connection connection, boolean linger)
+			throws IOException {
+		if (writeQueue != null) {
+			if (!writeQueue.scheduled.compareAndSet(false, true) && linger)
+				return; // Already scheduled.
+			long flushTime = linger && lingerMillis > 0
+					? System.currentTimeMillis() + lingerMillis
+					: 0;
+			this.flushTime = flushTime;
+			flushQueue.add(connection, flushTime);
+			return;
+		}
+		if (writePending) {
+			// Wake up selector so idle event will be fired.
+			selectionKey.selector().wakeup();
+			return;
+		}
+		if (linger && lingerMillis > 0 && flushQueue != null) {
+			if (!lingering) {
+				lingering = true;
+				flushTime = System.currentTimeMillis() + lingerMillis;
+				if (!inFlushQueue) {
+					inFlushQueue = true;
+					flushQueue.add(connection, flushTime);
+				}
+			}
+			return;
+		}
+		lingering = false;
+		if (!writeToSocket()) {
+			// A partial write, set OP_WRITE to be notified when more
+			// writing can occur.
+			selectionKey.interestOps(
+					SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			writePending = true;
+		} else {
+			// Full write, wake up selector so idle event will be fired.
+			selectionKey.selector().wakeup();
+		}
+	}
+
+	/** Returns the number of bytes waiting to be written. */
+	int getWriteSize() {
+		WriteQueue writeQueue = this.writeQueue;
+		if (writeQueue != null)
+			return writeQueue.size();
+		ByteBuffer writeBuffer = this.writeBuffer;
+		return writeBuffer != null ? writeBuffer.position() : 0;
+	}
+
+	/**
+	 * Returns how full the write buffer is or, with a write queue, the ratio
+	 * of the queued bytes to its high watermark.
+	 */
+	float getWriteUtilization() {
+		WriteQueue writeQueue = this.writeQueue;
+		if (writeQueue != null)
+			return writeQueue.size() / (float) writeQueue.highWatermark;
+		ByteBuffer writeBuffer = this.writeBuffer;
+		if (writeBuffer == null)
+			return 0;
+		return writeBuffer.position() / (float) writeBuffer.capacity();
+	}
+
+	/**
+	 * Returns false while a write queue holds more bytes than its high
+	 * watermark and is not yet drained to its low watermark.
+	 */
+	boolean isWritable() {
+		WriteQueue writeQueue = this.writeQueue;
+		return writeQueue == null || writeQueue.writable;
 	}
 
 	public void close() {
@@ -296,6 +950,16 @@ class TcpConnection {
 			if (DEBUG)
 				debug("kryonet", "Unable to close TCP connection.", ex);
 		}
+		// The selector thread may still be writing, only drop queued frames.
+		if (writeQueue != null)
+			writeQueue.clear();
+		chunkedObjects.clear();
+		Transfer transfer;
+		while ((transfer = transfers.poll()) != null)
+			transfer.close();
+		transfer = this.transfer;
+		if (transfer != null)
+			transfer.close();
 	}
 
 	public boolean needsKeepAlive(long time) {
@@ -307,4 +971,18 @@ class TcpConnection {
 		return socketChannel != null && timeoutMillis > 0
 				&& time - lastReadTime > timeoutMillis;
 	}
+
+	/**
+	 * Returns the earliest time at which {@link #needsKeepAlive(long)} or
+	 * {@link #isTimedOut(long)} can become true, given that nothing is read or
+	 * written until then.
+	 */
+	long nextKeepAliveCheck() {
+		long next = Long.MAX_VALUE;
+		if (keepAliveMillis > 0)
+			next = lastWriteTime + keepAliveMillis + 1;
+		if (timeoutMillis > 0)
+			next = Math.min(next, lastReadTime + timeoutMillis + 1);
+		return next;
+	}
 }
@@ -0,0 +1,127 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import java.util.Arrays;
+
+/**
+ * A hashed timing wheel. Items are put into the slot of the tick their
+ * deadline falls into, so advancing the wheel only looks at the items in the
+ * slots of the elapsed ticks instead of at every item. Deadlines further away
+ * than one rotation stay in their slot until they are due.
+ * <p>
+ * This class is not thread safe and is meant to be used by the single thread
+ * updating an end point.
+ */
+abstract class TimerWheel<T> {
+	private final int tickMillis, mask;
+	private final Object[][] items;
+	private final long[][] deadlines;
+	private final int[] sizes;
+	private Object[] due = new Object[16];
+	private long tick;
+
+	/**
+	 * @param slotCount
+	 *            Has to be a power of two.
+	 */
+	TimerWheel(int tickMillis, int slotCount, long time) {
+		if (Integer.bitCount(slotCount) != 1)
+			throw new IllegalArgumentException(
+					"slotCount must be a power of two: " + slotCount);
+		this.tickMillis = tickMillis;
+		this.mask = slotCount - 1;
+		this.items = new Object[slotCount][4];
+		this.deadlines = new long[slotCount][4];
+		this.sizes = new int[slotCount];
+		this.tick = time / tickMillis;
+	}
+
+	/**
+	 * Schedules the item to be {@linkplain #expired(Object, long) expired} at
+	 * the first tick at or after the deadline, but not before the next tick.
+	 */
+	void schedule(T item, long deadline) {
+		long deadlineTick = Math.max((deadline + tickMillis - 1) / tickMillis,
+				tick + 1);
+		int slot = (int) (deadlineTick & mask);
+		int size = sizes[slot];
+		if (size == items[slot].length) {
+			items[slot] = Arrays.copyOf(items[slot], size << 1);
+			deadlines[slot] = Arrays.copyOf(deadlines[slot], size << 1);
+		}
+		items[slot][size] = item;
+		deadlines[slot][size] = deadlineTick * tickMillis;
+		sizes[slot] = size + 1;
+	}
+
+	/**
+	 * Expires all items whose deadline is at or before the given time. Items
+	 * are rescheduled with the deadline returned by
+	 * {@link #expired(Object, long)}.
+	 */
+	@SuppressWarnings("unchecked")
+	void advance(long time) {
+		long targetTick = time / tickMillis;
+		if (targetTick <= tick)
+			return;
+		// One rotation visits every slot.
+		long firstTick = Math.max(tick + 1, targetTick - mask);
+		tick = targetTick;
+		for (long t = firstTick; t <= targetTick; t++) {
+			int slot = (int) (t & mask);
+			Object[] slotItems = items[slot];
+			long[] slotDeadlines = deadlines[slot];
+			int size = sizes[slot];
+			if (size == 0)
+				continue;
+			// Take the due items out of the slot before calling expired, as it
+			// may schedule new items.
+			if (due.length < size)
+				due = new Object[Math.max(size, due.length << 1)];
+			Object[] due = this.due;
+			int dueCount = 0, kept = 0;
+			for (int i = 0; i < size; i++) {
+				if (slotDeadlines[i] <= time)
+					due[dueCount++] = slotItems[i];
+				else {
+					slotItems[kept] = slotItems[i];
+					slotDeadlines[kept++] = slotDeadlines[i];
+				}
+			}
+			Arrays.fill(slotItems, kept, size, null);
+			sizes[slot] = kept;
+			for (int i = 0; i < dueCount; i++) {
+				T item = (T) due[i];
+				due[i] = null;
+				long deadline = expired(item, time);
+				if (deadline >= 0)
+					schedule(item, deadline);
+			}
+		}
+	}
+
+	/**
+	 * Called when the deadline of the item is due.
+	 * 
+	 * @return The next deadline of the item or <code>-1</code> to remove it.
+	 */
+	protected abstract long expired(T item, long time);
+}
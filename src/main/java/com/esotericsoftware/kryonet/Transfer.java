@@ -0,0 +1,166 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static com.esotericsoftware.minlog.Log.DEBUG;
+import static com.esotericsoftware.minlog.Log.debug;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Raw bytes sent over TCP between two frames, either from a file with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * or from a buffer such as a mapped region, and received into a file with
+ * {@link FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)},
+ * so the bytes are not copied to the heap.
+ */
+class Transfer {
+	/**
+	 * The total length of a chunk frame that announces a transfer, see
+	 * {@link TcpConnection#sendFile(Connection, Object, FileChannel, long, long)}.
+	 */
+	static final int HEADER = -1;
+
+	private final ByteBuffer header;
+	private final ByteBuffer buffer;
+	final Object descriptor;
+	FileChannel file;
+	private long position, remaining;
+	/**
+	 * Without a write queue, the number of bytes in the write buffer that are
+	 * sent before this transfer and after the previous one.
+	 */
+	int frameBytes;
+
+	/** Creates a transfer to send. */
+	Transfer(ByteBuffer header, FileChannel file, long position, long count,
+			ByteBuffer buffer) {
+		this.header = header;
+		this.file = file;
+		this.position = position;
+		this.remaining = count;
+		this.buffer = buffer;
+		descriptor = null;
+	}
+
+	/** Creates a transfer to receive into the file, which may be null. */
+	Transfer(Object descriptor, FileChannel file, long count)
+			throws IOException {
+		this.descriptor = descriptor;
+		this.file = file;
+		position = file != null ? file.position() : 0;
+		remaining = count;
+		header = null;
+		buffer = null;
+	}
+
+	/**
+	 * Writes the header and as many bytes as the socket accepts.
+	 * 
+	 * @return true if all bytes were written.
+	 */
+	boolean write(SocketChannel socketChannel) throws IOException {
+		if (header.hasRemaining()) {
+			socketChannel.write(header);
+			if (header.hasRemaining())
+				return false;
+		}
+		while (remaining > 0) {
+			long count;
+			if (file != null) {
+				count = file.transferTo(position, remaining, socketChannel);
+				if (count == 0 && position >= file.size())
+					throw new IOException("File was truncated, " + remaining
+							+ " bytes are missing.");
+			} else
+				count = socketChannel.write(buffer);
+			if (count == 0)
+				return false; // The socket is full.
+			position += count;
+			remaining -= count;
+		}
+		close();
+		return true;
+	}
+
+	/**
+	 * Writes the bytes in the read buffer and then bytes directly from the
+	 * socket to the file, or skips them without a file.
+	 * 
+	 * @return true if all bytes were received.
+	 */
+	boolean read(ByteBuffer readBuffer, SocketChannel socketChannel)
+			throws IOException {
+		while (remaining > 0) {
+			if (readBuffer.hasRemaining()) {
+				int length = (int) Math.min(readBuffer.remaining(),
+						remaining);
+				int limit = readBuffer.limit();
+				readBuffer.limit(readBuffer.position() + length);
+				if (file == null)
+					readBuffer.position(readBuffer.limit());
+				while (readBuffer.hasRemaining())
+					position += file.write(readBuffer, position);
+				readBuffer.limit(limit);
+				remaining -= length;
+				continue;
+			}
+			if (file != null) {
+				long count = file.transferFrom(socketChannel, position,
+						remaining);
+				if (count > 0) {
+					position += count;
+					remaining -= count;
+					continue;
+				}
+			}
+			// Reading is needed to skip bytes or to detect the end of the
+			// stream, which transferFrom does not report.
+			readBuffer.clear();
+			int bytesRead = socketChannel.read(readBuffer);
+			readBuffer.flip();
+			if (bytesRead == -1)
+				throw new SocketException("Connection is closed.");
+			if (bytesRead == 0)
+				return false;
+		}
+		if (file != null)
+			file.position(position);
+		return true;
+	}
+
+	/** Closes the file being sent. */
+	void close() {
+		FileChannel file = this.file;
+		if (file == null || header == null)
+			return;
+		this.file = null;
+		try {
+			file.close();
+		} catch (IOException ex) {
+			if (DEBUG)
+				debug("kryonet", "Unable to close file.", ex);
+		}
+	}
+}
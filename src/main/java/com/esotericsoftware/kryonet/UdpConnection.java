@@ -26,10 +26,12 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.net.SocketOption;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.esotericsoftware.kryonet.serialization.Serialization;
 
@@ -49,28 +51,72 @@ public class UdpConnection {
 	 */
 	public static boolean androidFixDisabled = false;
 
+	/**
+	 * The default maximum number of datagrams read each time the channel is
+	 * selected.
+	 */
+	public static final int RECEIVE_BUDGET = 64;
+
 	InetSocketAddress connectedAddress;
 	DatagramChannel datagramChannel;
 	int keepAliveMillis = 19000;
-	final ByteBuffer readBuffer, writeBuffer;
+	final ByteBuffer readBuffer;
+	/** The maximum size of a serialized object. */
+	final int bufferSize;
+	/**
+	 * Objects are serialized in a buffer of the sending thread and the
+	 * datagrams are sent without locking, so threads sending UDP do not wait
+	 * for each other.
+	 */
+	private final ThreadLocal<ByteBuffer> writeBuffers, fragmentBuffers;
 	private final Serialization serialization;
 	private SelectionKey selectionKey;
-	private final Object writeLock = new Object();
-	private long lastCommunicationTime;
+	private volatile long lastCommunicationTime;
+	/** Whether the datagram read holds objects packed by {@link UdpPacker}. */
+	private boolean packed;
+	/** Whether the datagram read holds a fragment of an object. */
+	private boolean fragment;
+	private final AtomicInteger nextFragmentedID = new AtomicInteger();
 
 	public UdpConnection(Serialization serialization, int bufferSize) {
+		this(serialization, bufferSize, false);
+	}
+
+	/**
+	 * @param directReadBuffer
+	 *            If true, datagrams are received into a direct buffer, which
+	 *            avoids a copy by the channel.
+	 */
+	public UdpConnection(Serialization serialization, int bufferSize,
+			boolean directReadBuffer) {
 		this.serialization = serialization;
-		readBuffer = ByteBuffer.allocate(bufferSize);
-		writeBuffer = ByteBuffer.allocateDirect(bufferSize);
+		readBuffer = directReadBuffer ? ByteBuffer.allocateDirect(bufferSize)
+				: ByteBuffer.allocate(bufferSize);
+		this.bufferSize = bufferSize;
+		writeBuffers = ThreadLocal
+				.withInitial(() -> ByteBuffer.allocateDirect(bufferSize));
+		fragmentBuffers = ThreadLocal
+				.withInitial(() -> ByteBuffer.allocateDirect(bufferSize));
 	}
 
 	public void bind(Selector selector, InetSocketAddress localPort)
 			throws IOException {
+		bind(selector, localPort, null);
+	}
+
+	/**
+	 * @param reusePort
+	 *            The <code>SO_REUSEPORT</code> option to enable, or
+	 *            <code>null</code>.
+	 */
+	void bind(Selector selector, InetSocketAddress localPort,
+			SocketOption<Boolean> reusePort) throws IOException {
 		close();
 		readBuffer.clear();
-		writeBuffer.clear();
 		try {
 			datagramChannel = selector.provider().openDatagramChannel();
+			if (reusePort != null)
+				datagramChannel.setOption(reusePort, true);
 			datagramChannel.socket().bind(localPort);
 			datagramChannel.configureBlocking(false);
 			selectionKey = datagramChannel.register(selector,
@@ -87,7 +133,6 @@ public class UdpConnection {
 			throws IOException {
 		close();
 		readBuffer.clear();
-		writeBuffer.clear();
 		try {
 			datagramChannel = selector.provider().openDatagramChannel();
 			datagramChannel.socket().bind(null);
@@ -115,68 +160,255 @@ public class UdpConnection {
 			throw new SocketException("Connection is closed.");
 		lastCommunicationTime = System.currentTimeMillis();
 
+		readBuffer.clear();
+		InetSocketAddress address;
 		if (androidFixDisabled || !datagramChannel.isConnected())
-			return (InetSocketAddress) datagramChannel.receive(readBuffer); // always
-																			// null
-																			// on
-																			// Android
-																			// >=
-																			// 5.0
-		datagramChannel.read(readBuffer);
-		return connectedAddress;
+			address = (InetSocketAddress) datagramChannel.receive(readBuffer); // always
+																				// null
+																				// on
+																				// Android
+																				// >=
+																				// 5.0
+		else if (datagramChannel.read(readBuffer) > 0)
+			address = connectedAddress;
+		else
+			address = null; // No datagram.
+
+		readBuffer.flip();
+		packed = false;
+		fragment = false;
+		int lengthLength = serialization.getLengthLength();
+		if (readBuffer.remaining() > lengthLength) {
+			int length = serialization.readLength(readBuffer);
+			packed = length == UdpPacker.PACKED;
+			fragment = length == UdpFragments.FRAGMENT;
+			if (!packed && !fragment)
+				readBuffer.position(0);
+		}
+		return address;
 	}
 
+	/**
+	 * Reads the next object of the datagram received by
+	 * {@link #readFromAddress()}. A datagram holds more than one object if
+	 * they were {@linkplain Connection#sendUDP(Object, boolean) packed}. An
+	 * object that was sent in fragments is returned with its last fragment.
+	 * 
+	 * @return <code>null</code> if all objects of the datagram were read.
+	 */
 	public Object readObject(Connection connection) {
-		readBuffer.flip();
+		if (!readBuffer.hasRemaining())
+			return null;
+		int limit = readBuffer.limit();
 		try {
-			try {
-				Object object = serialization.read(connection, readBuffer);
-				if (readBuffer.hasRemaining())
+			if (fragment) {
+				fragment = false;
+				if (connection == null) {
+					readBuffer.position(limit);
+					return null; // Fragments of unregistered addresses.
+				}
+				ByteBuffer buffer = connection.udpFragments().add(readBuffer,
+						readBuffer.capacity(), lastCommunicationTime);
+				readBuffer.position(limit);
+				if (buffer == null)
+					return null;
+				Object object = serialization.read(connection, buffer);
+				if (buffer.hasRemaining())
 					throw new KryoNetException("Incorrect number of bytes ("
-							+ readBuffer.remaining()
+							+ buffer.remaining()
 							+ " remaining) used to deserialize object: "
 							+ object);
 				return object;
-			} catch (Exception ex) {
-				throw new KryoNetException("Error during deserialization.", ex);
 			}
-		} finally {
-			readBuffer.clear();
+			if (packed) {
+				int length = serialization.readLength(readBuffer);
+				if (length < 0 || length > readBuffer.remaining())
+					throw new KryoNetException(
+							"Invalid packed object length: " + length);
+				readBuffer.limit(readBuffer.position() + length);
+			}
+			Object object = serialization.read(connection, readBuffer);
+			if (readBuffer.hasRemaining())
+				throw new KryoNetException("Incorrect number of bytes ("
+						+ readBuffer.remaining()
+						+ " remaining) used to deserialize object: " + object);
+			readBuffer.limit(limit);
+			return object;
+		} catch (Exception ex) {
+			// The rest of the datagram is dropped.
+			readBuffer.position(limit);
+			readBuffer.limit(limit);
+			if (ex instanceof KryoNetException)
+				throw (KryoNetException) ex;
+			throw new KryoNetException("Error during deserialization.", ex);
 		}
 	}
 
 	/**
-	 * This method is thread safe. The used serialization may not!
+	 * This method is thread safe and does not lock, the object is serialized
+	 * in a buffer of the calling thread. The used serialization may not be
+	 * thread safe!
 	 */
 	public int send(Connection connection, Object object, SocketAddress address)
 			throws IOException {
 		DatagramChannel datagramChannel = this.datagramChannel;
 		if (datagramChannel == null)
 			throw new SocketException("Connection is closed.");
-		synchronized (writeLock) {
+		ByteBuffer writeBuffer = writeBuffers.get();
+		try {
 			try {
-				try {
-					serialization.write(connection, writeBuffer, object);
-				} catch (Exception ex) {
-					throw new KryoNetException(
-							"Error serializing object of type: "
-									+ object.getClass().getName(),
-							ex);
-				}
-				writeBuffer.flip();
-				int length = writeBuffer.limit();
-				datagramChannel.send(writeBuffer, address);
+				serialization.write(connection, writeBuffer, object);
+			} catch (Exception ex) {
+				throw new KryoNetException("Error serializing object of type: "
+						+ object.getClass().getName(), ex);
+			}
+			writeBuffer.flip();
+			int length = writeBuffer.limit();
+			if (connection != null && length > connection.packetSizeUDP)
+				return sendFragments(writeBuffer, address,
+						connection.packetSizeUDP);
+			if (isMarked(writeBuffer))
+				return sendEscaped(writeBuffer, address,
+						connection != null ? connection.packetSizeUDP
+								: bufferSize);
+			datagramChannel.send(writeBuffer, address);
 
-				lastCommunicationTime = System.currentTimeMillis();
+			lastCommunicationTime = System.currentTimeMillis();
 
-				boolean wasFullWrite = !writeBuffer.hasRemaining();
-				return wasFullWrite ? length : -1;
-			} finally {
-				writeBuffer.clear();
-			}
+			boolean wasFullWrite = !writeBuffer.hasRemaining();
+			return wasFullWrite ? length : -1;
+		} finally {
+			writeBuffer.clear();
 		}
 	}
 
+	/**
+	 * Sends a datagram that was already serialized, in fragments if it is
+	 * larger than the {@linkplain Connection#setPacketSizeUDP(int) packet
+	 * size} of the connection. This method is thread safe.
+	 * 
+	 * @see #send(ByteBuffer, SocketAddress)
+	 */
+	int send(Connection connection, ByteBuffer datagram,
+			SocketAddress address) throws IOException {
+		int packetSize = connection.packetSizeUDP;
+		if (datagram.remaining() > packetSize)
+			return sendFragments(datagram.duplicate(), address, packetSize);
+		if (isMarked(datagram))
+			return sendEscaped(datagram, address, packetSize);
+		return sendDatagram(datagram, address);
+	}
+
+	/**
+	 * Returns true if the object in the datagram starts with the bytes of
+	 * {@link UdpPacker#PACKED} or {@link UdpFragments#FRAGMENT}, so the
+	 * receiver would take it for a framework header.
+	 */
+	private boolean isMarked(ByteBuffer datagram) {
+		if (datagram.remaining() <= serialization.getLengthLength())
+			return false;
+		int length = serialization.readLength(datagram.duplicate());
+		return length == UdpPacker.PACKED || length == UdpFragments.FRAGMENT;
+	}
+
+	/**
+	 * Sends the object in the datagram as a packed datagram holding only this
+	 * object, which the receiver reads without looking at its first bytes.
+	 * The datagram is built in a buffer of the calling thread.
+	 */
+	private int sendEscaped(ByteBuffer datagram, SocketAddress address,
+			int packetSize) throws IOException {
+		int lengthLength = serialization.getLengthLength();
+		int length = datagram.remaining();
+		if (length + lengthLength * 2 > Math.min(packetSize, bufferSize))
+			return sendFragments(datagram.duplicate(), address, packetSize);
+		ByteBuffer fragmentBuffer = fragmentBuffers.get();
+		fragmentBuffer.clear();
+		serialization.writeLength(fragmentBuffer, UdpPacker.PACKED);
+		serialization.writeLength(fragmentBuffer, length);
+		fragmentBuffer.put(datagram.duplicate());
+		fragmentBuffer.flip();
+		return sendDatagram(fragmentBuffer, address) == -1 ? -1 : length;
+	}
+
+	/**
+	 * Sends the bytes between the buffer's position and limit in datagrams of
+	 * up to the packet size, see {@link UdpFragments}. The datagrams are built
+	 * in a buffer of the calling thread.
+	 * 
+	 * @return The number of bytes sent or <code>-1</code> if a fragment was
+	 *         not sent.
+	 */
+	private int sendFragments(ByteBuffer buffer, SocketAddress address,
+			int packetSize) throws IOException {
+		DatagramChannel datagramChannel = this.datagramChannel;
+		if (datagramChannel == null)
+			throw new SocketException("Connection is closed.");
+		ByteBuffer fragmentBuffer = fragmentBuffers.get();
+		int lengthLength = serialization.getLengthLength();
+		int size = packetSize - lengthLength - UdpFragments.HEADER_SIZE;
+		int length = buffer.remaining();
+		int count = (length + size - 1) / size;
+		if (count > 0xffff)
+			throw new KryoNetException(
+					"Too many fragments for object with length: " + length);
+		int id = nextFragmentedID.getAndIncrement();
+		boolean wasFullWrite = true;
+		int limit = buffer.limit();
+		for (int index = 0; index < count; index++) {
+			fragmentBuffer.clear();
+			serialization.writeLength(fragmentBuffer, UdpFragments.FRAGMENT);
+			fragmentBuffer.putInt(id);
+			fragmentBuffer.putInt(length);
+			fragmentBuffer.putShort((short) index);
+			fragmentBuffer.putShort((short) count);
+			buffer.limit(Math.min(buffer.position() + size, limit));
+			fragmentBuffer.put(buffer);
+			buffer.limit(limit);
+			fragmentBuffer.flip();
+			datagramChannel.send(fragmentBuffer, address);
+			if (fragmentBuffer.hasRemaining())
+				wasFullWrite = false;
+		}
+		lastCommunicationTime = System.currentTimeMillis();
+		return wasFullWrite ? length : -1;
+	}
+
+	/**
+	 * Sends a datagram that was already serialized. This allows the same bytes
+	 * to be sent to many connections, see {@link Server#sendToAllUDP(Object)}.
+	 * This method is thread safe and does not serialize.
+	 * 
+	 * @param datagram
+	 *            the bytes between its position and limit are sent. The buffer
+	 *            itself is not modified.
+	 */
+	public int send(ByteBuffer datagram, SocketAddress address)
+			throws IOException {
+		if (isMarked(datagram))
+			return sendEscaped(datagram, address, bufferSize);
+		return sendDatagram(datagram, address);
+	}
+
+	/**
+	 * Sends the datagram as is, without escaping its first bytes. Used for
+	 * datagrams that start with a framework header, see {@link UdpPacker}.
+	 */
+	int sendDatagram(ByteBuffer datagram, SocketAddress address)
+			throws IOException {
+		DatagramChannel datagramChannel = this.datagramChannel;
+		if (datagramChannel == null)
+			throw new SocketException("Connection is closed.");
+		ByteBuffer buffer = datagram.duplicate();
+		int length = buffer.remaining();
+		datagramChannel.send(buffer, address);
+
+		lastCommunicationTime = System.currentTimeMillis();
+
+		boolean wasFullWrite = !buffer.hasRemaining();
+		return wasFullWrite ? length : -1;
+	}
+
 	public void close() {
 		connectedAddress = null;
 		try {
@@ -0,0 +1,46 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+/**
+ * How an object sent over UDP is delivered.
+ * 
+ * @see Connection#sendUDP(Object, UdpDelivery)
+ * @see Server#setUdpDelivery(Class, UdpDelivery)
+ * @see Client#setUdpDelivery(Class, UdpDelivery)
+ */
+public enum UdpDelivery {
+	/** Sent once, may be lost, duplicated or received out of order. */
+	UNRELIABLE,
+	/**
+	 * Resent until acknowledged and received in the order it was sent,
+	 * relative to the other reliable ordered objects.
+	 */
+	RELIABLE_ORDERED,
+	/** Resent until acknowledged, received as soon as it arrives. */
+	RELIABLE_UNORDERED,
+	/**
+	 * Sent once and dropped if a sequenced object sent later was already
+	 * received, e.g. for state updates where only the latest matters.
+	 */
+	SEQUENCED;
+
+	static final UdpDelivery[] values = values();
+}
@@ -0,0 +1,126 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * Reassembles the objects a connection received over UDP in fragments. A
+ * fragment datagram starts with a length of {@link #FRAGMENT}, followed by the
+ * ID, the length, the fragment index and the fragment count of the object and
+ * the bytes of the fragment. All fragments but the last have the same size.
+ * At most {@link #MAX_OBJECTS} objects are reassembled at a time, and an
+ * object whose fragments did not all arrive within {@link #TIMEOUT_MILLIS} is
+ * dropped, just as a lost datagram. This class is not thread-safe, it is used
+ * by the thread reading UDP.
+ */
+class UdpFragments {
+	/**
+	 * Marks a fragment datagram. An object that starts with the bytes of this
+	 * length is escaped by the sender, see {@link UdpPacker#PACKED}.
+	 */
+	static final int FRAGMENT = -2;
+	/** The size of the fragment header after the length. */
+	static final int HEADER_SIZE = 12;
+	static final int MAX_OBJECTS = 8;
+	static final int TIMEOUT_MILLIS = 1000;
+
+	private final Partial[] partials = new Partial[MAX_OBJECTS];
+
+	/**
+	 * Adds the fragment between the buffer's position and limit, after the
+	 * {@link #FRAGMENT} length.
+	 * 
+	 * @param maxLength
+	 *            The maximum length of an object.
+	 * @return The bytes of the object if this was its last missing fragment,
+	 *         else <code>null</code>.
+	 * @throws KryoNetException
+	 *             if the fragment is invalid.
+	 */
+	ByteBuffer add(ByteBuffer buffer, int maxLength, long time) {
+		if (buffer.remaining() < HEADER_SIZE)
+			throw new KryoNetException("Invalid fragment header.");
+		int id = buffer.getInt();
+		int length = buffer.getInt();
+		int index = buffer.getShort() & 0xffff;
+		int count = buffer.getShort() & 0xffff;
+		int size = buffer.remaining();
+		int offset = index < count - 1 ? index * size : length - size;
+		if (length > maxLength)
+			throw new KryoNetException(
+					"Unable to read object larger than read buffer: " + length);
+		if (index >= count || size == 0 || offset < 0
+				|| offset + size > length)
+			throw new KryoNetException("Invalid fragment " + index + "/"
+					+ count + " of object with length: " + length);
+
+		Partial partial = null;
+		int slot = -1, oldest = -1;
+		for (int i = 0; i < MAX_OBJECTS; i++) {
+			Partial other = partials[i];
+			if (other == null || time - other.startTime > TIMEOUT_MILLIS) {
+				partials[i] = null;
+				if (slot == -1)
+					slot = i;
+			} else if (other.id == id) {
+				partial = other;
+				slot = i;
+				break;
+			} else if (oldest == -1
+					|| other.startTime < partials[oldest].startTime)
+				oldest = i;
+		}
+		if (partial == null) {
+			// Drop the object reassembled the longest if there is no room.
+			if (slot == -1)
+				slot = oldest;
+			partial = partials[slot] = new Partial(id, length, count, time);
+		} else if (partial.bytes.length != length || partial.count != count)
+			throw new KryoNetException("Fragment " + index + "/" + count
+					+ " does not match the object: " + id);
+
+		if (partial.received.get(index))
+			return null; // Duplicate.
+		partial.received.set(index);
+		buffer.get(partial.bytes, offset, size);
+		if (++partial.receivedCount < count)
+			return null;
+		partials[slot] = null;
+		return ByteBuffer.wrap(partial.bytes);
+	}
+
+	static private class Partial {
+		final int id, count;
+		final byte[] bytes;
+		final BitSet received;
+		final long startTime;
+		int receivedCount;
+
+		Partial(int id, int length, int count, long startTime) {
+			this.id = id;
+			this.count = count;
+			bytes = new byte[length];
+			received = new BitSet(count);
+			this.startTime = startTime;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+import com.esotericsoftware.kryonet.serialization.Serialization;
+
+/**
+ * Packs the objects sent over UDP by a connection into datagrams of up to a
+ * packet size. A packed datagram starts with a length of {@link #PACKED},
+ * followed by the length and bytes of each object. A datagram with only one
+ * object is sent as usual. This class is thread-safe.
+ */
+class UdpPacker {
+	/**
+	 * Marks a packed datagram. A datagram with only one object that starts
+	 * with the bytes of this length or of {@link UdpFragments#FRAGMENT} is
+	 * sent packed, so the receiver does not take the object for a header.
+	 */
+	static final int PACKED = -1;
+
+	private final ByteBuffer buffer;
+	private int count;
+
+	UdpPacker(int bufferSize) {
+		// A heap buffer, so a frame can be moved within it.
+		buffer = ByteBuffer.allocate(bufferSize);
+	}
+
+	/**
+	 * Packs the object after the objects packed before. If the datagram would
+	 * become larger than the packet size or the object does not fit in the
+	 * buffer, the objects packed before are sent first. An object that is
+	 * larger than the packet size on its own is sent right away.
+	 * 
+	 * @return The number of bytes serialized.
+	 */
+	synchronized int add(Connection connection, Object object,
+			SocketAddress address, int packetSize) throws IOException {
+		Serialization serialization = connection.tcp.serialization;
+		int lengthLength = serialization.getLengthLength();
+		if (count == 0)
+			buffer.position(lengthLength);
+		int start = buffer.position();
+		try {
+			buffer.position(start + lengthLength);
+			serialization.write(connection, buffer, object);
+		} catch (Throwable ex) {
+			buffer.position(start);
+			if (count > 0) {
+				// The object may not fit after the objects packed before, so
+				// they are sent and the object is serialized again.
+				send(connection, address);
+				return add(connection, object, address, packetSize);
+			}
+			throw new KryoNetException("Error serializing object of type: "
+					+ object.getClass().getName(), ex);
+		}
+		int end = buffer.position();
+		int length = end - start;
+		buffer.position(start);
+		serialization.writeLength(buffer, length - lengthLength);
+		buffer.position(end);
+
+		if (count > 0 && end > packetSize) {
+			// Send the objects packed before and move the frame to the start
+			// of the next datagram.
+			buffer.position(start);
+			send(connection, address);
+			System.arraycopy(buffer.array(), start, buffer.array(),
+					lengthLength, length);
+			end = lengthLength + length;
+			buffer.position(end);
+		}
+		count++;
+		if (end >= packetSize)
+			send(connection, address);
+		return length - lengthLength;
+	}
+
+	/** Sends the objects packed, if any. */
+	synchronized void flush(Connection connection, SocketAddress address)
+			throws IOException {
+		if (count > 0)
+			send(connection, address);
+	}
+
+	synchronized boolean isEmpty() {
+		return count == 0;
+	}
+
+	/** Sends the frames before the buffer's position. */
+	private void send(Connection connection, SocketAddress address)
+			throws IOException {
+		Serialization serialization = connection.tcp.serialization;
+		int lengthLength = serialization.getLengthLength();
+		int end = buffer.position();
+		if (count == 1) {
+			// Sent without the packed header and the length.
+			buffer.position(lengthLength * 2);
+		} else {
+			buffer.position(0);
+			serialization.writeLength(buffer, PACKED);
+			buffer.position(0);
+		}
+		buffer.limit(end);
+		try {
+			if (count == 1)
+				connection.udp.send(connection, buffer, address);
+			else
+				connection.udp.sendDatagram(buffer, address);
+		} finally {
+			buffer.clear();
+			count = 0;
+		}
+	}
+}
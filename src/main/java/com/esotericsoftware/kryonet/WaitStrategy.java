@@ -0,0 +1,160 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+package com.esotericsoftware.kryonet;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How an update loop waits for its selector. Blocking in a select costs no CPU
+ * but the thread has to be woken up by the scheduler for every message. The
+ * other strategies return from an update without blocking so the update loop
+ * polls the selector again, trading CPU for a lower and steadier latency.
+ * Strategies are stateless, so one instance can be shared by several
+ * threads.
+ * 
+ * @see Server#setWaitStrategy(WaitStrategy)
+ * @see Client#setWaitStrategy(WaitStrategy)
+ */
+public interface WaitStrategy {
+	/**
+	 * Selects the keys of the selector that are ready.
+	 * 
+	 * @param timeout
+	 *            The maximum milliseconds to wait, or 0 to return
+	 *            immediately.
+	 * @param emptySelects
+	 *            The number of previous selects in a row that selected no
+	 *            keys, counting only those given the full update timeout. 0
+	 *            when this select's timeout was shortened, e.g. to flush a
+	 *            lingering connection.
+	 * @return The number of keys selected, see {@link Selector#select()}.
+	 */
+	public int select(Selector selector, int timeout, int emptySelects)
+			throws IOException;
+
+	/**
+	 * Blocks in {@link Selector#select(long)} for up to the timeout. After
+	 * 100 empty selects in a row, sleeps for the rest of 25 milliseconds, as
+	 * NIO sometimes returns immediately with no keys. This is the default.
+	 */
+	static public class Blocking implements WaitStrategy {
+		@Override
+		public int select(Selector selector, int timeout, int emptySelects)
+				throws IOException {
+			long startTime = System.currentTimeMillis();
+			int select = timeout > 0 ? selector.select(timeout)
+					: selector.selectNow();
+			if (select == 0 && emptySelects % 100 == 99) {
+				// NIO freaks and returns immediately with 0 sometimes, so try
+				// to keep from hogging the CPU.
+				long elapsedTime = System.currentTimeMillis() - startTime;
+				try {
+					if (elapsedTime < 25)
+						Thread.sleep(25 - elapsedTime);
+				} catch (InterruptedException ex) {
+				}
+			}
+			return select;
+		}
+	}
+
+	/**
+	 * Never blocks, the update loop keeps a core busy polling the selector.
+	 */
+	static public class BusySpin implements WaitStrategy {
+		@Override
+		public int select(Selector selector, int timeout, int emptySelects)
+				throws IOException {
+			return selector.selectNow();
+		}
+	}
+
+	/**
+	 * Polls the selector and {@link Thread#yield() yields} when no keys are
+	 * ready, so other threads of the process can run on the core.
+	 */
+	static public class Yielding implements WaitStrategy {
+		@Override
+		public int select(Selector selector, int timeout, int emptySelects)
+				throws IOException {
+			int select = selector.selectNow();
+			if (select == 0 && timeout > 0)
+				Thread.yield();
+			return select;
+		}
+	}
+
+	/**
+	 * Busy spins for a number of empty selects, then yields for a number of
+	 * empty selects, then parks for a time that doubles with every empty
+	 * select, from the minimum to the maximum park time. Parking for a
+	 * millisecond or more blocks in the select instead, which is woken up as
+	 * soon as a key is ready.
+	 */
+	static public class SpinThenPark implements WaitStrategy {
+		final int spins, yields;
+		final long minParkNanos, maxParkNanos;
+
+		/**
+		 * Spins for 1000 and yields for 100 empty selects, then parks from 1
+		 * microsecond to 1 millisecond.
+		 */
+		public SpinThenPark() {
+			this(1000, 100, 1000, 1000000);
+		}
+
+		public SpinThenPark(int spins, int yields, long minParkNanos,
+				long maxParkNanos) {
+			if (spins < 0 || yields < 0)
+				throw new IllegalArgumentException("Invalid spins: " + spins
+						+ ", yields: " + yields);
+			if (minParkNanos <= 0 || minParkNanos > maxParkNanos)
+				throw new IllegalArgumentException("Invalid park nanos, min: "
+						+ minParkNanos + ", max: " + maxParkNanos);
+			this.spins = spins;
+			this.yields = yields;
+			this.minParkNanos = minParkNanos;
+			this.maxParkNanos = maxParkNanos;
+		}
+
+		@Override
+		public int select(Selector selector, int timeout, int emptySelects)
+				throws IOException {
+			int select = selector.selectNow();
+			if (select != 0 || timeout == 0 || emptySelects < spins)
+				return select;
+			if (emptySelects - spins < yields) {
+				Thread.yield();
+				return selector.selectNow();
+			}
+			long parkNanos = minParkNanos;
+			for (int i = emptySelects - spins - yields; i > 0
+					&& parkNanos < maxParkNanos; i--)
+				parkNanos <<= 1;
+			parkNanos = Math.min(Math.min(parkNanos, maxParkNanos),
+					timeout * 1000000L);
+			if (parkNanos >= 1000000)
+				return selector.select(parkNanos / 1000000);
+			LockSupport.parkNanos(parkNanos);
+			return selector.selectNow();
+		}
+	}
+}
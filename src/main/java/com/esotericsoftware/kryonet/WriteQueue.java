@@ -0,0 +1,205 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The frames waiting to be written to a TCP socket. Sending threads add
+ * frames without locking, each copied to a buffer from a {@link BufferPool},
+ * and only the selector thread writes them, using gathering writes. The queue
+ * is unbounded. It becomes unwritable once more than the high watermark is
+ * queued and writable again once it is drained to the low watermark.
+ * <p>
+ * {@link Transfer Transfers} are queued between the frames, so a file is sent
+ * exactly after the frames queued before it.
+ */
+class WriteQueue {
+	/** The maximum number of frames written by a single gathering write. */
+	static final int MAX_GATHER = 64;
+
+	final BufferPool pool;
+	final int lowWatermark, highWatermark;
+	private final ConcurrentLinkedQueue<Object> frames = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger size = new AtomicInteger();
+	/**
+	 * Frames taken from the queue that are not completely written yet. Only
+	 * accessed by the selector thread.
+	 */
+	private final ByteBuffer[] writing = new ByteBuffer[MAX_GATHER];
+	private int writingCount;
+	/**
+	 * The transfer the frames were written up to, or null. Only accessed by
+	 * the selector thread.
+	 */
+	private Transfer transfer;
+	/**
+	 * True while the selector thread is going to write the queue, so senders
+	 * don't need to wake it up.
+	 */
+	final AtomicBoolean scheduled = new AtomicBoolean();
+	volatile boolean writable = true;
+
+	WriteQueue(BufferPool pool, int lowWatermark, int highWatermark) {
+		checkWatermarks(lowWatermark, highWatermark);
+		this.pool = pool;
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+	}
+
+	static void checkWatermarks(int lowWatermark, int highWatermark) {
+		if (lowWatermark < 0 || lowWatermark > highWatermark)
+			throw new IllegalArgumentException("Invalid watermarks, low: "
+					+ lowWatermark + ", high: " + highWatermark);
+	}
+
+	/**
+	 * Copies the remaining bytes of the frame and adds them to the end of the
+	 * queue. This method is thread-safe.
+	 */
+	void add(ByteBuffer frame) {
+		int length = frame.remaining();
+		ByteBuffer buffer = pool.obtain(length);
+		buffer.put(frame);
+		buffer.flip();
+		frames.add(buffer);
+		if (size.addAndGet(length) > highWatermark && writable) {
+			writable = false;
+			// The selector thread may have drained the queue meanwhile.
+			if (size.get() <= lowWatermark)
+				writable = true;
+		}
+	}
+
+	/**
+	 * Adds the transfer to the end of the queue. This method is thread-safe.
+	 */
+	void add(Transfer transfer) {
+		frames.add(transfer);
+	}
+
+	/**
+	 * Writes as many queued frames as the socket accepts and returns the
+	 * written buffers to the pool. Writing stops at the first queued
+	 * transfer, see {@link #takeTransfer()}. Only called by the selector
+	 * thread.
+	 * 
+	 * @return true if the queue is empty or the frames were written up to a
+	 *         transfer.
+	 */
+	boolean write(SocketChannel socketChannel) throws IOException {
+		try {
+			while (true) {
+				Object frame;
+				while (transfer == null && writingCount < MAX_GATHER
+						&& (frame = frames.poll()) != null) {
+					if (frame instanceof Transfer)
+						transfer = (Transfer) frame;
+					else
+						writing[writingCount++] = (ByteBuffer) frame;
+				}
+				if (writingCount == 0)
+					return true;
+
+				long written = socketChannel.write(writing, 0, writingCount);
+				size.addAndGet((int) -written);
+				int emptied = 0;
+				while (emptied < writingCount
+						&& !writing[emptied].hasRemaining())
+					pool.free(writing[emptied++]);
+				if (emptied > 0) {
+					System.arraycopy(writing, emptied, writing, 0,
+							writingCount - emptied);
+					for (int i = writingCount - emptied; i < writingCount; i++)
+						writing[i] = null;
+					writingCount -= emptied;
+				}
+				if (writingCount > 0)
+					return false; // The socket is full.
+			}
+		} finally {
+			if (!writable && size.get() <= lowWatermark)
+				writable = true;
+		}
+	}
+
+	/**
+	 * Returns the transfer the frames were written up to and removes it from
+	 * the queue, or returns null. Only called by the selector thread.
+	 */
+	Transfer takeTransfer() {
+		Transfer transfer = this.transfer;
+		this.transfer = null;
+		return transfer;
+	}
+
+	/** Only called by the selector thread. */
+	boolean isEmpty() {
+		return writingCount == 0 && transfer == null && frames.isEmpty();
+	}
+
+	/** Returns the number of queued bytes. */
+	int size() {
+		return size.get();
+	}
+
+	/**
+	 * Discards the queued frames and closes the queued transfers, but not
+	 * those the selector thread already started writing. This method is
+	 * thread-safe.
+	 */
+	void clear() {
+		Object frame;
+		while ((frame = frames.poll()) != null) {
+			if (frame instanceof Transfer) {
+				((Transfer) frame).close();
+				continue;
+			}
+			ByteBuffer buffer = (ByteBuffer) frame;
+			size.addAndGet(-buffer.remaining());
+			pool.free(buffer);
+		}
+		writable = true;
+	}
+
+	/**
+	 * Discards all frames. Must not be called while the selector thread may
+	 * write.
+	 */
+	void reset() {
+		clear();
+		for (int i = 0; i < writingCount; i++) {
+			pool.free(writing[i]);
+			writing[i] = null;
+		}
+		writingCount = 0;
+		if (transfer != null) {
+			transfer.close();
+			transfer = null;
+		}
+		size.set(0);
+		scheduled.set(false);
+	}
+}
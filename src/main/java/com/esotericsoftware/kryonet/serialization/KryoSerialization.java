@@ -5,14 +5,26 @@ import java.nio.ByteBuffer;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.ByteBufferInput;
 import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.FrameworkMessage;
 import com.esotericsoftware.kryonet.FrameworkMessage.DiscoverHost;
 import com.esotericsoftware.kryonet.FrameworkMessage.KeepAlive;
 import com.esotericsoftware.kryonet.FrameworkMessage.Ping;
+import com.esotericsoftware.kryonet.FrameworkMessage.Reliable;
 import com.esotericsoftware.kryonet.FrameworkMessage.RegisterTCP;
 import com.esotericsoftware.kryonet.FrameworkMessage.RegisterUDP;
 
 public class KryoSerialization implements Serialization {
+	/**
+	 * The registration ID of {@link Reliable}. It was added after the other
+	 * framework messages, so it is registered with an ID apart from theirs.
+	 * The IDs of the classes registered afterwards stay the same as before,
+	 * and Kryo skips this ID when assigning the next one. It is the largest ID
+	 * that is written with two bytes.
+	 */
+	static public final int RELIABLE_ID = 16381;
+
 	private final Kryo kryo;
 	private final ByteBufferInput input;
 	private final ByteBufferOutput output;
@@ -27,11 +39,7 @@ public class KryoSerialization implements Serialization {
 	public KryoSerialization(Kryo kryo) {
 		this.kryo = kryo;
 
-		this.kryo.register(RegisterTCP.class);
-		this.kryo.register(RegisterUDP.class);
-		this.kryo.register(KeepAlive.class);
-		this.kryo.register(DiscoverHost.class);
-		this.kryo.register(Ping.class);
+		registerFrameworkMessages(kryo);
 
 		this.input = new ByteBufferInput();
 		this.output = new ByteBufferOutput();
@@ -41,6 +49,19 @@ public class KryoSerialization implements Serialization {
 		return kryo;
 	}
 
+	/**
+	 * Registers the internal {@link FrameworkMessage framework messages}. Has to
+	 * be called before any other class is registered.
+	 */
+	static void registerFrameworkMessages(Kryo kryo) {
+		kryo.register(RegisterTCP.class);
+		kryo.register(RegisterUDP.class);
+		kryo.register(KeepAlive.class);
+		kryo.register(DiscoverHost.class);
+		kryo.register(Ping.class);
+		kryo.register(Reliable.class, RELIABLE_ID);
+	}
+
 	@Override
 	public synchronized void write(Connection connection, ByteBuffer buffer,
 			Object object) {
@@ -50,6 +71,15 @@ public class KryoSerialization implements Serialization {
 		output.flush();
 	}
 
+	@Override
+	public synchronized ByteBuffer write(Connection connection, Object object,
+			int maxLength) {
+		Output output = new Output(Math.min(4096, maxLength), maxLength);
+		kryo.getContext().put("connection", connection);
+		kryo.writeClassAndObject(output, object);
+		return ByteBuffer.wrap(output.getBuffer(), 0, output.position());
+	}
+
 	@Override
 	public synchronized Object read(Connection connection, ByteBuffer buffer) {
 		input.setBuffer(buffer);
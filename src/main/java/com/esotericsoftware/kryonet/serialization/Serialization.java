@@ -29,6 +29,11 @@ import com.esotericsoftware.kryonet.Connection;
  * The server as well as each client holds <i>one</i> serialization instance.
  * Therefore all implementing classes have to be synchronized or made
  * thread-safe otherwise.
+ * <p>
+ * A UDP datagram may start with a negative length written by
+ * {@link #writeLength(ByteBuffer, int)} that marks a framework header. The
+ * bytes of a serialized object may start with the same bytes. Such an object
+ * is escaped before it is sent, so the receiver reads it as usual.
  */
 public interface Serialization {
 
@@ -48,6 +53,34 @@ public interface Serialization {
 	 */
 	public Object read(Connection connection, ByteBuffer buffer);
 
+	/**
+	 * Serializes an object whose size is not known in advance, e.g. an object
+	 * sent in chunks. The default implementation retries with a buffer twice
+	 * as large whenever the object does not fit.
+	 * 
+	 * @param connection
+	 *            May be <code>null</code>.
+	 * @param maxLength
+	 *            The maximum number of bytes the object may take.
+	 * @return A buffer with the bytes from position 0 to its limit.
+	 */
+	public default ByteBuffer write(Connection connection, Object object,
+			int maxLength) {
+		int size = Math.min(4096, maxLength);
+		while (true) {
+			ByteBuffer buffer = ByteBuffer.allocate(size);
+			try {
+				write(connection, buffer, object);
+				buffer.flip();
+				return buffer;
+			} catch (RuntimeException ex) {
+				if (size == maxLength)
+					throw ex;
+				size = (int) Math.min(size * 2L, maxLength);
+			}
+		}
+	}
+
 	/**
 	 * The length of the header indicating the length of the following data,
 	 * i.e. the fixed number of bytes that will be written by
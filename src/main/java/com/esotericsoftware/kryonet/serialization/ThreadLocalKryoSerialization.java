@@ -0,0 +1,113 @@
+package com.esotericsoftware.kryonet.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryonet.Connection;
+
+/**
+ * A Kryo based serialization that gives every thread its own {@link Kryo},
+ * {@link ByteBufferInput} and {@link ByteBufferOutput}. Unlike
+ * {@link KryoSerialization}, which all connections of an end point share and
+ * which synchronizes every read and write, threads encoding or decoding
+ * objects never block each other.
+ * <p>
+ * The Kryo instances are created lazily, the first time a thread uses this
+ * serialization. As the registrations cannot be shared between the instances,
+ * they are made by an initializer that is called for every new instance.
+ */
+public class ThreadLocalKryoSerialization implements Serialization {
+	private final ThreadLocal<Codec> codecs;
+
+	/**
+	 * Creates a serialization that only knows the framework messages. Use
+	 * {@link #ThreadLocalKryoSerialization(Consumer)} to register your own
+	 * classes.
+	 */
+	public ThreadLocalKryoSerialization() {
+		this(kryo -> {
+		});
+	}
+
+	/**
+	 * @param initializer
+	 *            Called with every new Kryo instance, after the framework
+	 *            messages were registered. Has to register the same classes in
+	 *            the same order every time, just like the other end of the
+	 *            connection does. References are disabled and registration is
+	 *            required by default, as with {@link KryoSerialization}.
+	 */
+	public ThreadLocalKryoSerialization(Consumer<Kryo> initializer) {
+		if (initializer == null)
+			throw new NullPointerException("initializer cannot be null.");
+		this.codecs = ThreadLocal.withInitial(() -> new Codec(initializer));
+	}
+
+	/**
+	 * Returns the Kryo instance of the calling thread. Classes registered with
+	 * it are not registered with the instances of other threads.
+	 */
+	public Kryo getKryo() {
+		return codecs.get().kryo;
+	}
+
+	@Override
+	public void write(Connection connection, ByteBuffer buffer, Object object) {
+		Codec codec = codecs.get();
+		codec.output.setBuffer(buffer);
+		codec.kryo.getContext().put("connection", connection);
+		codec.kryo.writeClassAndObject(codec.output, object);
+		codec.output.flush();
+	}
+
+	@Override
+	public ByteBuffer write(Connection connection, Object object,
+			int maxLength) {
+		Codec codec = codecs.get();
+		Output output = new Output(Math.min(4096, maxLength), maxLength);
+		codec.kryo.getContext().put("connection", connection);
+		codec.kryo.writeClassAndObject(output, object);
+		return ByteBuffer.wrap(output.getBuffer(), 0, output.position());
+	}
+
+	@Override
+	public Object read(Connection connection, ByteBuffer buffer) {
+		Codec codec = codecs.get();
+		codec.input.setBuffer(buffer);
+		codec.kryo.getContext().put("connection", connection);
+		return codec.kryo.readClassAndObject(codec.input);
+	}
+
+	@Override
+	public void writeLength(ByteBuffer buffer, int length) {
+		buffer.putInt(length);
+	}
+
+	@Override
+	public int readLength(ByteBuffer buffer) {
+		return buffer.getInt();
+	}
+
+	@Override
+	public int getLengthLength() {
+		return 4;
+	}
+
+	static private class Codec {
+		final Kryo kryo;
+		final ByteBufferInput input = new ByteBufferInput();
+		final ByteBufferOutput output = new ByteBufferOutput();
+
+		Codec(Consumer<Kryo> initializer) {
+			kryo = new Kryo();
+			kryo.setReferences(false);
+			kryo.setRegistrationRequired(true);
+			KryoSerialization.registerFrameworkMessages(kryo);
+			initializer.accept(kryo);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.esotericsoftware.kryonet.serialization.KryoSerialization;
+
+import org.junit.jupiter.api.Test;
+
+public class BroadcastTest extends KryoNetTestCase {
+	AtomicInteger serialized = new AtomicInteger();
+	AtomicInteger receivedTCP = new AtomicInteger();
+	AtomicInteger receivedUDP = new AtomicInteger();
+	AtomicInteger receivedExcept = new AtomicInteger();
+
+	@Test
+	public void testSerializeOnce() throws IOException {
+		final int clients = 4;
+
+		final Server server = new Server(16384, 8192,
+				new KryoSerialization() {
+					@Override
+					public void write(Connection connection,
+							ByteBuffer buffer, Object object) {
+						if (object instanceof String)
+							serialized.incrementAndGet();
+						super.write(connection, buffer, object);
+					}
+				});
+		startEndPoint(server);
+		server.bind(tcpPort, udpPort);
+
+		// ----
+
+		Client[] clientArray = new Client[clients];
+		for (int i = 0; i < clients; i++) {
+			Client client = new Client(16384, 8192);
+			startEndPoint(client);
+			client.addListener(new Listener() {
+				public void received(Connection connection, Object object) {
+					if ("tcp".equals(object))
+						receivedTCP.incrementAndGet();
+					else if ("udp".equals(object))
+						receivedUDP.incrementAndGet();
+					else if ("except".equals(object))
+						receivedExcept.incrementAndGet();
+				}
+			});
+			client.connect(5000, host, tcpPort, udpPort);
+			clientArray[i] = client;
+		}
+
+		server.sendToAllTCP("tcp");
+		server.sendToAllUDP("udp");
+		server.sendToAllExceptTCP(clientArray[0].getID(), "except");
+
+		waitForThreads(2000);
+
+		assertEquals(3, serialized.get());
+		assertEquals(clients, receivedTCP.get());
+		assertEquals(clients - 1, receivedExcept.get());
+		// UDP is unreliable, but will not be lost on localhost.
+		assertEquals(clients, receivedUDP.get());
+	}
+}
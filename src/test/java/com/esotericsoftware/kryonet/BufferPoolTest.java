@@ -0,0 +1,137 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class BufferPoolTest extends KryoNetTestCase {
+	@Test
+	public void testSizeClasses() {
+		BufferPool pool = new BufferPool(true, 1024 * 1024, 64);
+		assertEquals(64, pool.obtain(1).capacity());
+		assertEquals(64, pool.obtain(64).capacity());
+		assertEquals(128, pool.obtain(65).capacity());
+		assertEquals(16384, pool.obtain(16384).capacity());
+		assertEquals(1 << 24, pool.obtain(1 << 24).capacity());
+		assertEquals((1 << 24) + 1, pool.obtain((1 << 24) + 1).capacity());
+		assertTrue(pool.obtain(100).isDirect());
+		assertEquals(-1, BufferPool.sizeClass((1 << 24) + 1));
+	}
+
+	@Test
+	public void testFree() {
+		BufferPool pool = new BufferPool(false, 4096, 64);
+		ByteBuffer buffer = pool.obtain(1000);
+		buffer.putInt(1);
+		pool.free(buffer);
+		ByteBuffer reused = pool.obtain(600);
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+		assertEquals(1024, reused.limit());
+
+		// Only buffers of a size class and the pool's kind are taken.
+		ByteBuffer heap = ByteBuffer.allocate(1000);
+		ByteBuffer direct = ByteBuffer.allocateDirect(1024);
+		pool.free(heap);
+		pool.free(direct);
+		ByteBuffer obtained = pool.obtain(1000);
+		assertNotSame(heap, obtained);
+		assertNotSame(direct, obtained);
+
+		// No more than the maximum number of free bytes is kept.
+		ByteBuffer a = pool.obtain(4096), b = pool.obtain(4096);
+		pool.free(a);
+		pool.free(b);
+		assertSame(a, pool.obtain(4096));
+		assertNotSame(b, pool.obtain(4096));
+	}
+
+	@Test
+	public void testDirectBuffers() throws IOException {
+		test(false);
+	}
+
+	@Test
+	public void testDirectWriteQueue() throws IOException {
+		test(true);
+	}
+
+	private void test(boolean writeQueue) throws IOException {
+		final int clients = 4, rounds = 3;
+		final AtomicInteger replies = new AtomicInteger();
+
+		Server server = new Server();
+		server.setWorkerCount(2);
+		server.setDirectBuffers(true);
+		if (writeQueue)
+			server.setWriteQueue(1024, 8192);
+		startEndPoint(server);
+		server.bind(tcpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (object instanceof String)
+					connection.sendTCP(object + " reply");
+			}
+		});
+
+		// ----
+
+		for (int round = 0; round < rounds; round++) {
+			Client[] connected = new Client[clients];
+			for (int i = 0; i < clients; i++) {
+				Client client = new Client();
+				client.addListener(new Listener() {
+					public void received(Connection connection,
+							Object object) {
+						if (!(object instanceof String))
+							return;
+						assertEquals("round reply", object);
+						if (replies.incrementAndGet() == clients * rounds)
+							stopEndPoints();
+					}
+				});
+				client.start();
+				client.connect(5000, host, tcpPort);
+				connected[i] = client;
+			}
+			for (Client client : connected)
+				client.sendTCP("round");
+			for (Client client : connected) {
+				long start = System.currentTimeMillis();
+				while (replies.get() < (round + 1) * clients
+						&& System.currentTimeMillis() - start < 5000)
+					Thread.yield();
+				client.stop();
+			}
+		}
+
+		waitForThreads();
+		assertEquals(clients * rounds, replies.get());
+	}
+}
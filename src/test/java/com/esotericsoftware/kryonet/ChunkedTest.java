@@ -0,0 +1,93 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ChunkedTest extends KryoNetTestCase {
+	@Test
+	public void testChunked() throws IOException {
+		test(false);
+	}
+
+	@Test
+	public void testChunkedWriteQueue() throws IOException {
+		test(true);
+	}
+
+	private void test(boolean writeQueue) throws IOException {
+		final int[] large = new int[500000];
+		for (int i = 0; i < large.length; i++)
+			large[i] = i * 31;
+		final AtomicInteger smallBefore = new AtomicInteger();
+		final AtomicInteger largeReceived = new AtomicInteger();
+
+		// The object buffers are much smaller than the large object.
+		final Server server = new Server(16384, 2048);
+		if (writeQueue)
+			server.setWriteQueue(8192, 65536);
+		server.getKryo().register(int[].class);
+		startEndPoint(server);
+		server.bind(tcpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (object instanceof Integer) {
+					if (largeReceived.get() == 0)
+						smallBefore.incrementAndGet();
+				} else if (object instanceof int[]) {
+					assertArrayEquals(large, (int[]) object);
+					largeReceived.incrementAndGet();
+					connection.sendTCPChunked(object);
+				}
+			}
+		});
+
+		// ----
+
+		final Client client = new Client(16384, 2048);
+		client.getKryo().register(int[].class);
+		startEndPoint(client);
+		client.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (object instanceof int[]) {
+					assertArrayEquals(large, (int[]) object);
+					if (largeReceived.incrementAndGet() == 2)
+						stopEndPoints();
+				}
+			}
+		});
+		client.connect(5000, host, tcpPort);
+		assertTrue(client.sendTCPChunked(large) > 1000000);
+		// Not blocked behind the chunks of the large object.
+		for (int i = 0; i < 10; i++)
+			client.sendTCP(i);
+
+		waitForThreads();
+		assertEquals(2, largeReceived.get());
+		assertEquals(10, smallBefore.get());
+	}
+}
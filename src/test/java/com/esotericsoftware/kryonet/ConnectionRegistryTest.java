@@ -0,0 +1,73 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class ConnectionRegistryTest extends KryoNetTestCase {
+	@Test
+	public void testRegistry() {
+		ConnectionRegistry registry = new ConnectionRegistry();
+		assertEquals(0, registry.toArray().length);
+
+		Connection[] all = new Connection[1000];
+		for (int i = 0; i < all.length; i++) {
+			all[i] = new Connection();
+			all[i].id = i + 1;
+			registry.add(all[i]);
+		}
+		assertEquals(all.length, registry.size());
+		assertSame(all[41], registry.get(42));
+		assertNull(registry.get(all.length + 1));
+
+		Connection[] snapshot = registry.toArray();
+		assertEquals(all.length, snapshot.length);
+		assertSame(snapshot, registry.toArray());
+
+		// Only the connection registered with an ID removes it.
+		Connection other = new Connection();
+		other.id = 1;
+		assertFalse(registry.remove(other));
+
+		for (int i = 0; i < all.length; i += 2)
+			assertTrue(registry.remove(all[i]));
+		assertFalse(registry.remove(all[0]));
+		// Snapshots taken before the removal are unchanged.
+		assertEquals(all.length, snapshot.length);
+
+		Set<Connection> remaining = new HashSet<>();
+		for (Connection connection : registry.toArray())
+			remaining.add(connection);
+		assertEquals(all.length / 2, remaining.size());
+		for (int i = 0; i < all.length; i++)
+			assertEquals(i % 2 == 1, remaining.contains(all[i]));
+		assertNull(registry.get(1));
+		assertSame(all[1], registry.get(2));
+	}
+}
@@ -0,0 +1,190 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.esotericsoftware.kryonet.serialization.ThreadLocalKryoSerialization;
+
+public class DecodeQueueTest extends KryoNetTestCase {
+	final AtomicInteger received = new AtomicInteger();
+	final Map<Connection, Integer> next = new ConcurrentHashMap<>();
+	volatile String fail;
+
+	@Test
+	public void testOrder() throws IOException {
+		final int clients = 3;
+		final int messageCount = 300;
+		// Sent in chunks, as it is larger than the object buffer, and
+		// received after the smaller objects sent meanwhile.
+		final int[] large = new int[5000];
+		for (int i = 0; i < large.length; i++)
+			large[i] = i * 31;
+
+		ExecutorService decoder = Executors.newFixedThreadPool(4,
+				runnable -> new Thread(runnable, "decoder"));
+		final Server server = new Server(16384, 2048,
+				new ThreadLocalKryoSerialization(
+						kryo -> kryo.register(int[].class)));
+		server.setWorkerCount(2);
+		server.setDecodeExecutor(decoder);
+		startEndPoint(server);
+		server.bind(tcpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (!"decoder".equals(Thread.currentThread().getName()))
+					fail = "Not decoded by the executor.";
+				if (object instanceof int[])
+					assertArrayEquals(large, (int[]) object);
+				else if (object instanceof Integer) {
+					int expected = next.getOrDefault(connection, 0);
+					if ((Integer) object != expected)
+						fail = "Expected " + expected + ", received: "
+								+ object;
+					next.put(connection, expected + 1);
+				} else
+					return;
+				if (received.incrementAndGet() == clients
+						* (messageCount + 1))
+					stopEndPoints();
+			}
+		});
+
+		// ----
+
+		for (int i = 0; i < clients; i++) {
+			Client client = new Client(16384, 2048);
+			client.getKryo().register(int[].class);
+			startEndPoint(client);
+			client.connect(5000, host, tcpPort);
+			for (int ii = 0; ii < messageCount; ii++) {
+				if (ii == messageCount / 2)
+					client.sendTCPChunked(large);
+				client.sendTCP(ii);
+			}
+		}
+
+		waitForThreads(10000);
+		decoder.shutdown();
+		assertNull(fail);
+		assertEquals(clients * (messageCount + 1), received.get());
+	}
+
+	@Test
+	public void testListenerError() throws IOException {
+		final AtomicInteger disconnected = new AtomicInteger();
+
+		ExecutorService decoder = Executors.newFixedThreadPool(4,
+				runnable -> new Thread(runnable, "decoder"));
+		final Server server = new Server();
+		server.setDecodeExecutor(decoder);
+		startEndPoint(server);
+		server.bind(tcpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (disconnected.get() != 0)
+					fail = "Received after disconnected: " + object;
+				if (Integer.valueOf(10).equals(object))
+					throw new Error("Listener error.");
+			}
+
+			public void disconnected(Connection connection) {
+				if (!"decoder".equals(Thread.currentThread().getName()))
+					fail = "Not notified by the executor.";
+				disconnected.incrementAndGet();
+				stopEndPoints(500);
+			}
+		});
+
+		// ----
+
+		Client client = new Client();
+		startEndPoint(client);
+		client.connect(5000, host, tcpPort);
+		for (int i = 0; i < 100; i++)
+			client.sendTCP(i);
+
+		waitForThreads();
+		decoder.shutdown();
+		assertNull(fail);
+		assertEquals(1, disconnected.get());
+	}
+
+	@Test
+	public void testSendThenClose() throws IOException {
+		final int messageCount = 100;
+		final AtomicInteger disconnected = new AtomicInteger();
+
+		ExecutorService decoder = Executors.newFixedThreadPool(4,
+				runnable -> new Thread(runnable, "decoder"));
+		final Server server = new Server();
+		server.setDecodeExecutor(decoder);
+		startEndPoint(server);
+		server.bind(tcpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (!(object instanceof Integer))
+					return;
+				if (disconnected.get() != 0)
+					fail = "Received after disconnected: " + object;
+				else if ((Integer) object != received.get())
+					fail = "Expected " + received.get() + ", received: "
+							+ object;
+				received.incrementAndGet();
+				// Slower than the frames are read, so they are still queued
+				// when the connection is closed.
+				try {
+					Thread.sleep(2);
+				} catch (InterruptedException ignored) {
+				}
+			}
+
+			public void disconnected(Connection connection) {
+				disconnected.incrementAndGet();
+				stopEndPoints(500);
+			}
+		});
+
+		// ----
+
+		Client client = new Client();
+		startEndPoint(client);
+		client.connect(5000, host, tcpPort);
+		for (int i = 0; i < messageCount; i++)
+			client.sendTCP(i);
+		client.close();
+
+		waitForThreads();
+		decoder.shutdown();
+		assertNull(fail);
+		assertEquals(messageCount, received.get());
+		assertEquals(1, disconnected.get());
+	}
+}
@@ -0,0 +1,143 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class FileTransferTest extends KryoNetTestCase {
+	final List<Object> events = new ArrayList<>();
+
+	@Test
+	public void testFileChannel() throws IOException {
+		test(false, false, true);
+	}
+
+	@Test
+	public void testMappedRegion() throws IOException {
+		test(true, true, true);
+	}
+
+	@Test
+	public void testDiscarded() throws IOException {
+		test(false, false, false);
+	}
+
+	private void test(boolean mapped, boolean writeQueue,
+			final boolean receive) throws IOException {
+		final byte[] bytes = new byte[3 * 1024 * 1024 + 7];
+		new Random(42).nextBytes(bytes);
+		File source = File.createTempFile("kryonet", ".bin");
+		final File target = File.createTempFile("kryonet", ".bin");
+		source.deleteOnExit();
+		target.deleteOnExit();
+		Files.write(source.toPath(), bytes);
+
+		final Server server = new Server();
+		if (writeQueue)
+			server.setWriteQueue(8192, 65536);
+		startEndPoint(server);
+		server.bind(tcpPort);
+		server.addListener(new Listener() {
+			public void connected(Connection connection) {
+				if (!receive)
+					return;
+				connection.setFileReceiver(new FileReceiver() {
+					public FileChannel open(Connection connection,
+							Object descriptor, long length)
+							throws IOException {
+						event(descriptor + " " + length);
+						return FileChannel.open(target.toPath(),
+								StandardOpenOption.WRITE);
+					}
+
+					public void received(Connection connection,
+							Object descriptor, FileChannel channel)
+							throws IOException {
+						event(descriptor + " received");
+						channel.close();
+					}
+				});
+			}
+
+			public void received(Connection connection, Object object) {
+				if (object instanceof Integer) {
+					event(object);
+					if ((Integer) object == 2)
+						stopEndPoints();
+				}
+			}
+		});
+
+		// ----
+
+		Client client = new Client();
+		if (writeQueue)
+			client.setWriteQueue(8192, 65536);
+		startEndPoint(client);
+		client.connect(5000, host, tcpPort);
+		// Wait for the receiver to be set.
+		client.sendTCP(0);
+		while (true) {
+			synchronized (events) {
+				if (!events.isEmpty())
+					break;
+			}
+			Thread.yield();
+		}
+		client.sendTCP(1);
+		FileChannel channel = FileChannel.open(source.toPath());
+		if (mapped) {
+			client.sendFile("file",
+					channel.map(MapMode.READ_ONLY, 0, bytes.length));
+			channel.close();
+		} else
+			client.sendFile("file", channel, 0, bytes.length);
+		client.sendTCP(2);
+
+		waitForThreads();
+		synchronized (events) {
+			if (receive) {
+				assertEquals("[0, 1, file " + bytes.length
+						+ ", file received, 2]", events.toString());
+				assertArrayEquals(bytes, Files.readAllBytes(target.toPath()));
+			} else
+				assertEquals("[0, 1, 2]", events.toString());
+		}
+	}
+
+	void event(Object event) {
+		synchronized (events) {
+			events.add(event);
+		}
+	}
+}
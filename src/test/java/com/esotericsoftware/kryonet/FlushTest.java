@@ -0,0 +1,173 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class FlushTest extends KryoNetTestCase {
+	final List<Object> received = new ArrayList<>();
+	volatile long receivedTime;
+
+	@Test
+	public void testCork() throws IOException, InterruptedException {
+		Client client = connect(20);
+		for (int i = 0; i < 20; i++)
+			client.sendTCP(i, false);
+		Thread.sleep(250);
+		synchronized (received) {
+			assertEquals(0, received.size());
+		}
+		client.flush();
+
+		waitForThreads();
+		assertReceived(20);
+	}
+
+	@Test
+	public void testBatch() throws IOException {
+		Client client = connect(20);
+		Object[] objects = new Object[10];
+		for (int i = 0; i < 10; i++)
+			objects[i] = i;
+		client.sendTCPBatch(objects);
+		for (int i = 0; i < 10; i++)
+			objects[i] = 10 + i;
+		client.sendTCPBatch(objects);
+
+		waitForThreads();
+		assertReceived(20);
+	}
+
+	@Test
+	public void testLinger() throws IOException {
+		Client client = connect(20);
+		client.setLingerTCP(100);
+		long sendTime = System.currentTimeMillis();
+		for (int i = 0; i < 20; i++)
+			client.sendTCP(i);
+
+		waitForThreads();
+		assertReceived(20);
+		long elapsed = receivedTime - sendTime;
+		assertTrue(elapsed >= 80 && elapsed < 5000, "Lingered: " + elapsed);
+	}
+
+	@Test
+	public void testWriteQueue() throws IOException, InterruptedException {
+		Client client = connect(20);
+		client.close();
+		client.setWriteQueue(1024, 4096);
+		client.connect(5000, host, tcpPort);
+		for (int i = 0; i < 10; i++)
+			client.sendTCP(i, false);
+		Thread.sleep(250);
+		synchronized (received) {
+			assertEquals(0, received.size());
+		}
+		client.flush();
+
+		client.setLingerTCP(100);
+		for (int i = 10; i < 20; i++)
+			client.sendTCP(i);
+
+		waitForThreads();
+		assertReceived(20);
+	}
+
+	@Test
+	public void testLingerDoesNotDelayOthers() throws IOException {
+		final Server server = new Server();
+		server.setWriteQueue(1024, 4096);
+		startEndPoint(server);
+		server.bind(tcpPort);
+
+		// ----
+
+		Client lingering = new Client();
+		startEndPoint(lingering);
+		lingering.connect(5000, host, tcpPort);
+		Client client = new Client();
+		startEndPoint(client);
+		client.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (!(object instanceof Integer))
+					return;
+				receivedTime = System.currentTimeMillis();
+				stopEndPoints();
+			}
+		});
+		client.connect(5000, host, tcpPort);
+
+		// Both connections are written by the server's own selector.
+		for (Connection connection : server.getConnections()) {
+			if (connection.getID() == lingering.getID())
+				connection.setLingerTCP(5000);
+		}
+		long sendTime = System.currentTimeMillis();
+		server.sendToTCP(lingering.getID(), 1);
+		server.sendToTCP(client.getID(), 2);
+
+		waitForThreads();
+		long elapsed = receivedTime - sendTime;
+		assertTrue(receivedTime != 0 && elapsed < 2000,
+				"Delayed: " + elapsed);
+	}
+
+	private Client connect(final int expected) throws IOException {
+		final Server server = new Server();
+		startEndPoint(server);
+		server.bind(tcpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (!(object instanceof Integer))
+					return;
+				synchronized (received) {
+					received.add(object);
+					if (received.size() == expected) {
+						receivedTime = System.currentTimeMillis();
+						stopEndPoints();
+					}
+				}
+			}
+		});
+
+		// ----
+
+		Client client = new Client();
+		startEndPoint(client);
+		client.connect(5000, host, tcpPort);
+		return client;
+	}
+
+	private void assertReceived(int count) {
+		synchronized (received) {
+			assertEquals(count, received.size());
+			for (int i = 0; i < count; i++)
+				assertEquals(i, received.get(i));
+		}
+	}
+}
@@ -22,7 +22,11 @@ package com.esotericsoftware.kryonet;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.esotericsoftware.kryonet.serialization.ThreadLocalKryoSerialization;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class MultipleThreadTest extends KryoNetTestCase {
@@ -95,4 +99,60 @@ public class MultipleThreadTest extends KryoNetTestCase {
 
 		assertEquals(messageCount * clients, receivedServer);
 	}
+
+	@Test
+	public void testMultipleThreadsUDP() throws IOException {
+		final int messageCount = 50;
+		final int threads = 4;
+		// Sent in fragments.
+		final int[] large = new int[1000];
+		for (int i = 0; i < large.length; i++)
+			large[i] = i * 31;
+		final AtomicInteger received = new AtomicInteger();
+
+		// Each thread serializes with its own Kryo.
+		final Server server = new Server(16384, 8192,
+				new ThreadLocalKryoSerialization(
+						kryo -> kryo.register(int[].class)));
+		startEndPoint(server);
+		server.bind(tcpPort, udpPort);
+
+		// ----
+
+		Client client = new Client(16384, 8192);
+		client.getKryo().register(int[].class);
+		startEndPoint(client);
+		client.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (object instanceof int[])
+					assertArrayEquals(large, (int[]) object);
+				else if (!(object instanceof String))
+					return;
+				if (received.incrementAndGet() == messageCount * threads * 2)
+					stopEndPoints();
+			}
+		});
+		client.connect(5000, host, tcpPort, udpPort);
+
+		for (int i = 0; i < threads; i++) {
+			new Thread() {
+				public void run() {
+					for (int i = 0; i < messageCount; i++) {
+						for (Connection con : server.getConnections()) {
+							con.sendUDP("message" + i);
+							con.sendUDP(large);
+						}
+						try {
+							Thread.sleep(5);
+						} catch (InterruptedException ignored) {
+						}
+					}
+				}
+			}.start();
+		}
+
+		waitForThreads(5000);
+
+		assertEquals(messageCount * threads * 2, received.get());
+	}
 }
@@ -0,0 +1,83 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.esotericsoftware.kryonet.Listener.OrderedListener;
+
+public class OrderedListenerTest extends KryoNetTestCase {
+	@Test
+	public void test() throws InterruptedException {
+		final int connectionCount = 4;
+		final int eventCount = 1000;
+		final Connection[] connections = new Connection[connectionCount];
+		for (int i = 0; i < connectionCount; i++) {
+			connections[i] = new Connection();
+			connections[i].id = i + 1;
+		}
+		final Map<Connection, List<Object>> received = new ConcurrentHashMap<>();
+		final CountDownLatch othersDone = new CountDownLatch(
+				(connectionCount - 1) * eventCount);
+		final CountDownLatch allDone = new CountDownLatch(
+				connectionCount * eventCount);
+
+		ExecutorService threadPool = Executors.newFixedThreadPool(2);
+		OrderedListener listener = new OrderedListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				// The first connection is slow until the others are done.
+				if (connection == connections[0]) {
+					try {
+						othersDone.await();
+					} catch (InterruptedException ignored) {
+					}
+				} else
+					othersDone.countDown();
+				received.computeIfAbsent(connection, c -> new ArrayList<>())
+						.add(object);
+				allDone.countDown();
+			}
+		}, threadPool);
+
+		for (int i = 0; i < eventCount; i++)
+			for (Connection connection : connections)
+				listener.received(connection, i);
+
+		assertTrue(allDone.await(10, TimeUnit.SECONDS));
+		threadPool.shutdown();
+		for (Connection connection : connections) {
+			List<Object> objects = received.get(connection);
+			assertEquals(eventCount, objects.size());
+			for (int i = 0; i < eventCount; i++)
+				assertEquals(i, objects.get(i));
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryonet.FrameworkMessage.Ping;
+import com.esotericsoftware.kryonet.FrameworkMessage.Reliable;
+import com.esotericsoftware.kryonet.serialization.KryoSerialization;
+import com.esotericsoftware.minlog.Log;
+
+import org.junit.jupiter.api.Test;
+
+public class ReliableUdpTest extends KryoNetTestCase {
+	static final int COUNT = 300;
+
+	final List<Integer> received = new ArrayList<>();
+
+	@Test
+	public void testReliableOrdered() throws IOException {
+		test(UdpDelivery.RELIABLE_ORDERED);
+		for (int i = 0; i < COUNT; i++)
+			assertEquals(i, (int) received.get(i));
+	}
+
+	@Test
+	public void testReliableUnordered() throws IOException {
+		test(UdpDelivery.RELIABLE_UNORDERED);
+		assertEquals(COUNT, new HashSet<>(received).size());
+	}
+
+	@Test
+	public void testSequenced() throws IOException {
+		test(UdpDelivery.SEQUENCED);
+		assertTrue(received.size() > 0);
+		for (int i = 1, n = received.size(); i < n; i++)
+			assertTrue(received.get(i) > received.get(i - 1));
+	}
+
+	@Test
+	public void testRegistrationIds() {
+		// The classes registered after the framework messages keep the IDs
+		// they had before Reliable was added.
+		Kryo kryo = new KryoSerialization().getKryo();
+		int next = kryo.getRegistration(Ping.class).getId() + 1;
+		assertEquals(next, kryo.register(int[].class).getId());
+		assertEquals(KryoSerialization.RELIABLE_ID,
+				kryo.getRegistration(Reliable.class).getId());
+	}
+
+	private void test(final UdpDelivery delivery) throws IOException {
+		Log.INFO();
+		final Server server = new Server(16384, 2048, new LossySerialization(1));
+		server.setUdpDelivery(Integer.class, delivery);
+		startEndPoint(server);
+		server.bind(tcpPort, udpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (!(object instanceof Integer))
+					return;
+				// Sequenced objects are not resent, so the last one must
+				// arrive.
+				if (delivery == UdpDelivery.SEQUENCED
+						&& (Integer) object == COUNT - 1)
+					connection.sendUDP(object, UdpDelivery.RELIABLE_UNORDERED);
+				else
+					connection.sendUDP(object);
+			}
+		});
+
+		// ----
+
+		final Client client = new Client(16384, 2048, new LossySerialization(2));
+		startEndPoint(client);
+		client.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (!(object instanceof Integer))
+					return;
+				synchronized (received) {
+					received.add((Integer) object);
+					if ((Integer) object == COUNT - 1
+							&& delivery != UdpDelivery.RELIABLE_UNORDERED
+							|| received.size() == COUNT)
+						stopEndPoints();
+				}
+			}
+		});
+		client.connect(5000, host, tcpPort, udpPort);
+		for (int i = 0; i < COUNT; i++) {
+			if (delivery == UdpDelivery.SEQUENCED && i == COUNT - 1)
+				client.sendUDP(i, UdpDelivery.RELIABLE_UNORDERED);
+			else
+				client.sendUDP(i, delivery);
+		}
+
+		waitForThreads();
+		Log.TRACE();
+		if (delivery != UdpDelivery.SEQUENCED)
+			assertEquals(COUNT, received.size());
+	}
+
+	/** Drops a third of the reliable UDP datagrams when they are received. */
+	static class LossySerialization extends KryoSerialization {
+		private final Random random;
+
+		LossySerialization(long seed) {
+			random = new Random(seed);
+		}
+
+		@Override
+		public synchronized Object read(Connection connection,
+				ByteBuffer buffer) {
+			Object object = super.read(connection, buffer);
+			if (object instanceof Reliable && random.nextInt(3) == 0)
+				return FrameworkMessage.keepAlive;
+			return object;
+		}
+	}
+}
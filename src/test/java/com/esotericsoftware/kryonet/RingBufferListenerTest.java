@@ -0,0 +1,97 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.esotericsoftware.kryonet.Listener.RingBufferListener;
+
+public class RingBufferListenerTest extends KryoNetTestCase {
+	@Test
+	public void testOrder() throws InterruptedException {
+		assertThrows(IllegalArgumentException.class,
+				() -> new RingBufferListener(new Listener() {
+				}, 100, 1));
+
+		final int connectionCount = 4;
+		final int eventCount = 10000;
+		final Map<Connection, List<Object>> events = new ConcurrentHashMap<>();
+		final CountDownLatch done = new CountDownLatch(
+				connectionCount * (eventCount + 2));
+		// The small rings are full most of the time.
+		final RingBufferListener listener = new RingBufferListener(
+				new Listener() {
+					public void connected(Connection connection) {
+						event(connection, "connected");
+					}
+
+					public void received(Connection connection,
+							Object object) {
+						event(connection, object);
+					}
+
+					public void writabilityChanged(Connection connection,
+							boolean writable) {
+						event(connection, writable);
+					}
+
+					private void event(Connection connection, Object event) {
+						events.computeIfAbsent(connection,
+								c -> new ArrayList<>()).add(event);
+						done.countDown();
+					}
+				}, 16, 2);
+
+		// Each connection is notified by its own thread.
+		Thread[] threads = new Thread[connectionCount];
+		for (int i = 0; i < connectionCount; i++) {
+			final Connection connection = new Connection();
+			connection.id = i + 1;
+			threads[i] = new Thread(() -> {
+				listener.connected(connection);
+				for (int ii = 0; ii < eventCount; ii++)
+					listener.received(connection, ii);
+				listener.writabilityChanged(connection, false);
+			});
+			threads[i].start();
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		listener.stop();
+		assertEquals(connectionCount, events.size());
+		for (List<Object> connectionEvents : events.values()) {
+			assertEquals(eventCount + 2, connectionEvents.size());
+			assertEquals("connected", connectionEvents.get(0));
+			for (int i = 0; i < eventCount; i++)
+				assertEquals(i, connectionEvents.get(i + 1));
+			assertEquals(false, connectionEvents.get(eventCount + 1));
+		}
+	}
+}
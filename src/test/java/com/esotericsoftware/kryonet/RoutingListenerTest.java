@@ -0,0 +1,106 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.esotericsoftware.kryonet.Listener.RoutingListener;
+
+public class RoutingListenerTest extends KryoNetTestCase {
+	@Test
+	public void testLanes() throws InterruptedException {
+		final int connectionCount = 2;
+		final int eventCount = 500;
+		final Map<Connection, List<Object>> fast = new ConcurrentHashMap<>();
+		final Map<Connection, List<Object>> slow = new ConcurrentHashMap<>();
+		final CountDownLatch fastDone = new CountDownLatch(
+				connectionCount * eventCount);
+		final CountDownLatch slowDone = new CountDownLatch(
+				connectionCount * eventCount);
+
+		ExecutorService fastPool = Executors.newFixedThreadPool(2);
+		ExecutorService slowPool = Executors.newFixedThreadPool(2);
+		RoutingListener listener = new RoutingListener();
+		listener.addLane(fastPool).addTypeHandler(Integer.class,
+				(connection, object) -> {
+					add(fast, connection, object);
+					fastDone.countDown();
+				});
+		// The slow lane waits until the fast lane is done.
+		listener.addLane(slowPool).addTypeHandler(CharSequence.class,
+				(connection, object) -> {
+					try {
+						fastDone.await();
+					} catch (InterruptedException ignored) {
+					}
+					add(slow, connection, object);
+					slowDone.countDown();
+				});
+
+		Connection[] connections = new Connection[connectionCount];
+		for (int i = 0; i < connectionCount; i++) {
+			connections[i] = new Connection();
+			connections[i].id = i + 1;
+		}
+		for (int i = 0; i < eventCount; i++) {
+			for (Connection connection : connections) {
+				listener.received(connection, "text" + i);
+				listener.received(connection, i);
+				// No lane.
+				listener.received(connection, 1.5);
+			}
+		}
+
+		assertTrue(fastDone.await(10, TimeUnit.SECONDS));
+		assertTrue(slowDone.await(10, TimeUnit.SECONDS));
+		fastPool.shutdown();
+		slowPool.shutdown();
+		for (Connection connection : connections) {
+			List<Object> fastObjects = fast.get(connection);
+			List<Object> slowObjects = slow.get(connection);
+			assertEquals(eventCount, fastObjects.size());
+			assertEquals(eventCount, slowObjects.size());
+			for (int i = 0; i < eventCount; i++) {
+				assertEquals(i, fastObjects.get(i));
+				assertEquals("text" + i, slowObjects.get(i));
+			}
+		}
+	}
+
+	static void add(Map<Connection, List<Object>> objects,
+			Connection connection, Object object) {
+		List<Object> list = objects.computeIfAbsent(connection,
+				c -> new ArrayList<>());
+		synchronized (list) {
+			list.add(object);
+		}
+	}
+}
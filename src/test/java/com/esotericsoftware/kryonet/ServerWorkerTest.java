@@ -0,0 +1,217 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ServerWorkerTest extends KryoNetTestCase {
+	AtomicInteger received = new AtomicInteger();
+	Set<String> workerThreads = ConcurrentHashMap.newKeySet();
+
+	@Test
+	public void testWorkers() throws IOException {
+		final int clients = 6;
+		final int messageCount = 20;
+
+		final Server server = new Server();
+		server.setWorkerCount(3);
+		startEndPoint(server);
+		server.bind(tcpPort, udpPort);
+		server.addListener(new Listener() {
+			public void connected(Connection connection) {
+				workerThreads.add(Thread.currentThread().getName());
+			}
+
+			public void received(Connection connection, Object object) {
+				if (object instanceof String) {
+					workerThreads.add(Thread.currentThread().getName());
+					connection.sendTCP(object);
+				}
+			}
+		});
+
+		// ----
+
+		for (int i = 0; i < clients; i++) {
+			Client client = new Client();
+			startEndPoint(client);
+			client.addListener(new Listener() {
+				public void received(Connection connection, Object object) {
+					if (object instanceof String && received
+							.incrementAndGet() == clients * messageCount)
+						stopEndPoints();
+				}
+			});
+			client.addListener(new Listener() {
+				public void connected(Connection connection) {
+					for (int ii = 0; ii < messageCount; ii++)
+						connection.sendTCP("message" + ii);
+				}
+			});
+			client.connect(5000, host, tcpPort, udpPort);
+		}
+
+		waitForThreads(10000);
+
+		assertEquals(clients * messageCount, received.get());
+		assertEquals(3, workerThreads.size());
+		for (String name : workerThreads)
+			assertTrue(name.startsWith("Server worker"), name);
+	}
+
+	@Test
+	public void testReusePort() throws IOException {
+		final int clients = 8;
+		final int messageCount = 20;
+
+		final Server server = new Server();
+		server.setWorkerCount(3);
+		server.setReusePort(true);
+		startEndPoint(server);
+		server.bind(tcpPort, udpPort);
+		server.addListener(new Listener() {
+			public void connected(Connection connection) {
+				workerThreads.add(Thread.currentThread().getName());
+			}
+
+			public void received(Connection connection, Object object) {
+				if (object instanceof String)
+					connection.sendUDP(object);
+			}
+		});
+
+		// ----
+
+		for (int i = 0; i < clients; i++) {
+			Client client = new Client();
+			startEndPoint(client);
+			client.addListener(new Listener() {
+				public void received(Connection connection, Object object) {
+					if (object instanceof String && received
+							.incrementAndGet() == clients * messageCount)
+						stopEndPoints();
+				}
+			});
+			client.addListener(new Listener() {
+				public void connected(Connection connection) {
+					for (int ii = 0; ii < messageCount; ii++) {
+						if (ii % 2 == 0)
+							connection.sendTCP("message" + ii);
+						else
+							connection.sendUDP("message" + ii);
+					}
+				}
+			});
+			client.connect(5000, host, tcpPort, udpPort);
+		}
+
+		waitForThreads(10000);
+		assertEquals(clients * messageCount, received.get());
+		for (String name : workerThreads)
+			assertTrue(name.startsWith("Server worker"), name);
+	}
+
+	@Test
+	public void testReadBudget() throws IOException {
+		testReadBudget(0);
+		testReadBudget(1);
+	}
+
+	private void testReadBudget(int workerCount) throws IOException {
+		final int messageCount = 500;
+		final List<Integer> serverReceived = new ArrayList<>();
+
+		// Most objects are left in the read buffer after a read.
+		final Server server = new Server();
+		server.setWorkerCount(workerCount);
+		server.setReadBudget(1);
+		startEndPoint(server);
+		server.bind(tcpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (object instanceof Integer) {
+					serverReceived.add((Integer) object);
+					if (serverReceived.size() == messageCount)
+						stopEndPoints();
+				}
+			}
+		});
+
+		// ----
+
+		Client client = new Client();
+		startEndPoint(client);
+		client.connect(5000, host, tcpPort);
+		Object[] objects = new Object[messageCount];
+		for (int i = 0; i < messageCount; i++)
+			objects[i] = i;
+		client.sendTCPBatch(objects);
+
+		waitForThreads();
+		assertEquals(messageCount, serverReceived.size());
+		for (int i = 0; i < messageCount; i++)
+			assertEquals(i, (int) serverReceived.get(i));
+	}
+
+	@Test
+	public void testIdle() throws IOException {
+		final int updates = 8;
+		final AtomicInteger serverIdle = new AtomicInteger();
+		final AtomicInteger connectionIdle = new AtomicInteger();
+
+		final Server server = new Server();
+		startEndPoint(server);
+		server.bind(tcpPort);
+		server.addListener(new Listener() {
+			public void connected(Connection connection) {
+				connection.addListener(Listener.idle(idleConnection -> {
+					if (connectionIdle.incrementAndGet() == updates)
+						stopEndPoints();
+				}));
+			}
+
+			public void idle(Connection connection) {
+				serverIdle.incrementAndGet();
+			}
+		});
+
+		// ----
+
+		// Nothing is sent after connecting, the idle event is still fired for
+		// each update.
+		Client client = new Client();
+		startEndPoint(client);
+		client.connect(5000, host, tcpPort);
+
+		waitForThreads(10000);
+		assertTrue(connectionIdle.get() >= updates);
+		assertTrue(serverIdle.get() >= updates);
+	}
+}
@@ -0,0 +1,101 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TimerWheelTest extends KryoNetTestCase {
+	@Test
+	public void testWheel() {
+		final List<String> expired = new ArrayList<>();
+		TimerWheel<String> wheel = new TimerWheel<String>(10, 8, 1000) {
+			@Override
+			protected long expired(String item, long time) {
+				expired.add(item + "@" + time);
+				// Reschedule "repeat" once.
+				return item.equals("repeat") && time < 1100 ? time + 50 : -1;
+			}
+		};
+		wheel.schedule("a", 1025);
+		wheel.schedule("b", 1030);
+		wheel.schedule("late", 1500); // More than one rotation away.
+		wheel.schedule("repeat", 1040);
+
+		wheel.advance(1020);
+		assertEquals(0, expired.size());
+		wheel.advance(1030);
+		assertEquals("[a@1030, b@1030]", expired.toString());
+		expired.clear();
+
+		wheel.advance(1050);
+		assertEquals("[repeat@1050]", expired.toString());
+		expired.clear();
+
+		wheel.advance(1099);
+		assertEquals(0, expired.size());
+		wheel.advance(1100);
+		assertEquals("[repeat@1100]", expired.toString());
+		expired.clear();
+
+		wheel.advance(1499);
+		assertEquals(0, expired.size());
+		// Skipping many ticks at once still visits every slot.
+		wheel.advance(5000);
+		assertEquals("[late@5000]", expired.toString());
+	}
+
+	@Test
+	public void testTimeout() throws IOException {
+		final Server server = new Server();
+		startEndPoint(server);
+		server.bind(tcpPort);
+		final long[] disconnectTime = new long[1];
+		server.addListener(new Listener() {
+			public void connected(Connection connection) {
+				connection.setTimeout(500);
+			}
+
+			public void disconnected(Connection connection) {
+				disconnectTime[0] = System.currentTimeMillis();
+				stopEndPoints();
+			}
+		});
+
+		// ----
+
+		final Client client = new Client();
+		startEndPoint(client);
+		client.connect(5000, host, tcpPort);
+		client.setKeepAliveTCP(0);
+		long connectTime = System.currentTimeMillis();
+
+		waitForThreads(5000);
+
+		long elapsed = disconnectTime[0] - connectTime;
+		assertTrue(elapsed >= 400 && elapsed < 2500, "Timed out after: " + elapsed);
+	}
+}
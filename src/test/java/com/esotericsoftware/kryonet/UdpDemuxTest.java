@@ -0,0 +1,75 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class UdpDemuxTest extends KryoNetTestCase {
+	AtomicInteger received = new AtomicInteger();
+	AtomicInteger misrouted = new AtomicInteger();
+	AtomicInteger disconnected = new AtomicInteger();
+
+	@Test
+	public void testRouteByAddress() throws IOException {
+		final int clients = 8, messages = 10;
+
+		final Server server = new Server();
+		startEndPoint(server);
+		server.bind(tcpPort, udpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (!(object instanceof Integer))
+					return;
+				if ((Integer) object != connection.getID())
+					misrouted.incrementAndGet();
+				if (received.incrementAndGet() == clients * messages)
+					for (Connection c : server.getConnections())
+						c.close();
+			}
+
+			public void disconnected(Connection connection) {
+				if (disconnected.incrementAndGet() == clients)
+					stopEndPoints();
+			}
+		});
+
+		// ----
+
+		for (int i = 0; i < clients; i++) {
+			Client client = new Client();
+			startEndPoint(client);
+			client.connect(5000, host, tcpPort, udpPort);
+			for (int ii = 0; ii < messages; ii++)
+				client.sendUDP(client.getID());
+		}
+
+		waitForThreads(5000);
+
+		// UDP is unreliable, but will not be lost on localhost.
+		assertEquals(clients * messages, received.get());
+		assertEquals(0, misrouted.get());
+		assertEquals(0, server.getConnections().size());
+	}
+}
@@ -0,0 +1,138 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class UdpFragmentsTest extends KryoNetTestCase {
+	@Test
+	public void testReassembly() {
+		byte[] bytes = new byte[25];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = (byte) i;
+		UdpFragments fragments = new UdpFragments();
+
+		// Out of order and duplicated.
+		assertNull(fragments.add(fragment(1, bytes, 2, 10), 100, 0));
+		assertNull(fragments.add(fragment(1, bytes, 0, 10), 100, 0));
+		assertNull(fragments.add(fragment(1, bytes, 0, 10), 100, 0));
+		ByteBuffer object = fragments.add(fragment(1, bytes, 1, 10), 100, 0);
+		assertNotNull(object);
+		assertArrayEquals(bytes, object.array());
+
+		// Timed out.
+		assertNull(fragments.add(fragment(2, bytes, 0, 10), 100, 0));
+		assertNull(fragments.add(fragment(2, bytes, 1, 10), 100,
+				UdpFragments.TIMEOUT_MILLIS + 1));
+		assertNull(fragments.add(fragment(2, bytes, 2, 10), 100,
+				UdpFragments.TIMEOUT_MILLIS + 1));
+
+		// The oldest object is dropped when too many are reassembled.
+		fragments = new UdpFragments();
+		for (int id = 3; id < 4 + UdpFragments.MAX_OBJECTS; id++)
+			assertNull(fragments.add(fragment(id, bytes, 0, 10), 100, id));
+		assertNull(fragments.add(fragment(4, bytes, 1, 10), 100, 100));
+		assertNotNull(fragments.add(fragment(4, bytes, 2, 10), 100, 100));
+		assertNull(fragments.add(fragment(3, bytes, 1, 10), 100, 100));
+		assertNull(fragments.add(fragment(3, bytes, 2, 10), 100, 100));
+	}
+
+	/** Returns the fragment after the {@link UdpFragments#FRAGMENT} length. */
+	private ByteBuffer fragment(int id, byte[] bytes, int index, int size) {
+		int count = (bytes.length + size - 1) / size;
+		int offset = index * size;
+		int length = Math.min(size, bytes.length - offset);
+		ByteBuffer buffer = ByteBuffer
+				.allocate(UdpFragments.HEADER_SIZE + length);
+		buffer.putInt(id);
+		buffer.putInt(bytes.length);
+		buffer.putShort((short) index);
+		buffer.putShort((short) count);
+		buffer.put(bytes, offset, length);
+		buffer.flip();
+		return buffer;
+	}
+
+	@Test
+	public void testDefaultPacketSize() throws IOException {
+		// Objects that fit in the object buffer are sent in one datagram, as
+		// before fragments were supported.
+		Client client = new Client(16384, 8192);
+		assertEquals(8192, client.packetSizeUDP);
+		client.dispose();
+	}
+
+	@Test
+	public void testFragments() throws IOException {
+		final int[] large = new int[1500];
+		for (int i = 0; i < large.length; i++)
+			large[i] = i * 31;
+		final int count = 20;
+		final AtomicInteger received = new AtomicInteger();
+
+		final Server server = new Server(16384, 8192);
+		server.getKryo().register(int[].class);
+		startEndPoint(server);
+		server.bind(tcpPort, udpPort);
+		server.addListener(new Listener() {
+			public void connected(Connection connection) {
+				connection.setPacketSizeUDP(1200);
+			}
+
+			public void received(Connection connection, Object object) {
+				if (object instanceof int[]) {
+					assertArrayEquals(large, (int[]) object);
+					connection.sendUDP(object, UdpDelivery.RELIABLE_ORDERED);
+				}
+			}
+		});
+
+		// ----
+
+		final Client client = new Client(16384, 8192);
+		client.getKryo().register(int[].class);
+		startEndPoint(client);
+		client.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (object instanceof int[]) {
+					assertArrayEquals(large, (int[]) object);
+					if (received.incrementAndGet() == count)
+						stopEndPoints();
+				}
+			}
+		});
+		client.connect(5000, host, tcpPort, udpPort);
+		client.setPacketSizeUDP(1200);
+		for (int i = 0; i < count; i++)
+			client.sendUDP(large, UdpDelivery.RELIABLE_ORDERED);
+
+		waitForThreads();
+		assertEquals(count, received.get());
+	}
+}
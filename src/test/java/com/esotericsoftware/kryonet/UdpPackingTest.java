@@ -0,0 +1,219 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.esotericsoftware.kryonet.serialization.KryoSerialization;
+
+import org.junit.jupiter.api.Test;
+
+public class UdpPackingTest extends KryoNetTestCase {
+	static final int COUNT = 300;
+
+	@Test
+	public void testPacking() throws IOException {
+		final int[] large = new int[300];
+		for (int i = 0; i < large.length; i++)
+			large[i] = i * 31;
+		final List<Object> received = new ArrayList<>();
+		final AtomicInteger packed = new AtomicInteger();
+
+		final Server server = new Server(16384, 2048);
+		server.getKryo().register(int[].class);
+		startEndPoint(server);
+		server.bind(tcpPort, udpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				// Sent when the datagram is full or the update ends.
+				if (!(object instanceof FrameworkMessage))
+					connection.sendUDP(object, false);
+			}
+		});
+
+		// ----
+
+		final Client client = new Client(16384, 2048, new KryoSerialization() {
+			@Override
+			public int readLength(ByteBuffer buffer) {
+				int length = super.readLength(buffer);
+				if (length == UdpPacker.PACKED)
+					packed.incrementAndGet();
+				return length;
+			}
+		});
+		client.getKryo().register(int[].class);
+		startEndPoint(client);
+		client.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (object instanceof FrameworkMessage)
+					return;
+				synchronized (received) {
+					received.add(object);
+					if (received.size() == COUNT + 1)
+						stopEndPoints();
+				}
+			}
+		});
+		client.connect(5000, host, tcpPort, udpPort);
+		client.setPacketSizeUDP(500);
+		for (int i = 0; i < COUNT; i++) {
+			client.sendUDP(string(i), false);
+			if (i == COUNT / 2)
+				client.sendUDP(large, false); // Larger than the packet size.
+			if (i % 10 == 9)
+				client.flushUDP();
+		}
+
+		waitForThreads();
+		assertEquals(COUNT + 1, received.size());
+		assertTrue(packed.get() > 0);
+		int next = 0;
+		for (Object object : received) {
+			if (object instanceof int[]) {
+				assertArrayEquals(large, (int[]) object);
+				continue;
+			}
+			assertEquals(string(next), object);
+			next++;
+		}
+	}
+
+	@Test
+	public void testMarkedObjects() throws IOException {
+		final int[] large = new int[1000];
+		for (int i = 0; i < large.length; i++)
+			large[i] = i * 31;
+		final List<Object> received = new ArrayList<>();
+
+		final Server server = new Server(16384, 8192, new MarkedSerialization());
+		server.getKryo().register(int[].class);
+		startEndPoint(server);
+		server.bind(tcpPort, udpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (object instanceof FrameworkMessage)
+					return;
+				synchronized (received) {
+					received.add(object);
+					if (received.size() == COUNT + 1)
+						stopEndPoints();
+				}
+			}
+		});
+
+		// ----
+
+		final Client client = new Client(16384, 8192, new MarkedSerialization());
+		client.getKryo().register(int[].class);
+		startEndPoint(client);
+		client.connect(5000, host, tcpPort, udpPort);
+		client.setPacketSizeUDP(500);
+		for (int i = 0; i < COUNT; i++) {
+			// Sent on its own, packed on its own and packed with another.
+			if (i % 4 == 0)
+				client.sendUDP(string(i));
+			else
+				client.sendUDP(string(i), i % 4 != 2);
+		}
+		client.sendUDP(large); // Sent in fragments.
+
+		waitForThreads();
+		assertEquals(COUNT + 1, received.size());
+		for (int i = 0; i < COUNT; i++)
+			assertEquals(string(i), received.get(i));
+		assertArrayEquals(large, (int[]) received.get(COUNT));
+	}
+
+	@Test
+	public void testBufferFull() throws IOException {
+		final List<Object> received = new ArrayList<>();
+
+		final Server server = new Server(16384, 2048);
+		server.getKryo().register(byte[].class);
+		startEndPoint(server);
+		server.bind(tcpPort, udpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (object instanceof FrameworkMessage)
+					return;
+				synchronized (received) {
+					received.add(object);
+					if (received.size() == 2)
+						stopEndPoints();
+				}
+			}
+		});
+
+		// ----
+
+		final Client client = new Client(16384, 2048);
+		client.getKryo().register(byte[].class);
+		startEndPoint(client);
+		client.connect(5000, host, tcpPort, udpPort);
+		client.setPacketSizeUDP(2048);
+		// The second object does not fit in the buffer after the first.
+		client.sendUDP(new byte[1100], false);
+		client.sendUDP(new byte[1000], false);
+		client.flushUDP();
+
+		waitForThreads();
+		assertEquals(2, received.size());
+		assertEquals(1100, ((byte[]) received.get(0)).length);
+		assertEquals(1000, ((byte[]) received.get(1)).length);
+	}
+
+	/**
+	 * Starts the bytes of each object with the length that marks a packed or
+	 * a fragment datagram.
+	 */
+	static private class MarkedSerialization extends KryoSerialization {
+		@Override
+		public synchronized void write(Connection connection, ByteBuffer buffer,
+				Object object) {
+			writeLength(buffer, object.hashCode() % 2 == 0 ? UdpPacker.PACKED
+					: UdpFragments.FRAGMENT);
+			super.write(connection, buffer, object);
+		}
+
+		@Override
+		public synchronized Object read(Connection connection,
+				ByteBuffer buffer) {
+			readLength(buffer);
+			return super.read(connection, buffer);
+		}
+	}
+
+	/** Returns strings of different lengths. */
+	static String string(int i) {
+		StringBuilder buffer = new StringBuilder().append(i).append(' ');
+		for (int ii = 0; ii < i % 50; ii++)
+			buffer.append('x');
+		return buffer.toString();
+	}
+}
@@ -0,0 +1,95 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class WaitStrategyTest extends KryoNetTestCase {
+	AtomicInteger received = new AtomicInteger();
+
+	@Test
+	public void testSpinThenPark() throws IOException {
+		assertThrows(IllegalArgumentException.class,
+				() -> new WaitStrategy.SpinThenPark(-1, 0, 1, 1));
+		assertThrows(IllegalArgumentException.class,
+				() -> new WaitStrategy.SpinThenPark(0, 0, 2, 1));
+
+		WaitStrategy strategy = new WaitStrategy.SpinThenPark(1, 1, 1000,
+				4000000);
+		try (Selector selector = Selector.open()) {
+			// Spinning, yielding and parking return without keys.
+			for (int i = 0; i < 20; i++)
+				assertEquals(0, strategy.select(selector, 10, i));
+			// A park of a millisecond or more is woken up by the selector.
+			selector.wakeup();
+			long start = System.nanoTime();
+			assertEquals(0, strategy.select(selector, 1000, 20));
+			assertTrue(System.nanoTime() - start < 1000000000L);
+		}
+	}
+
+	@Test
+	public void testPingPong() throws IOException {
+		final int messageCount = 500;
+
+		final Server server = new Server();
+		server.setWorkerCount(2);
+		server.setWriteQueue(8192, 65536);
+		server.setWaitStrategy(new WaitStrategy.BusySpin());
+		startEndPoint(server);
+		server.bind(tcpPort);
+		server.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (object instanceof Integer)
+					connection.sendTCP(object);
+			}
+		});
+
+		// ----
+
+		final Client client = new Client();
+		client.setWaitStrategy(
+				new WaitStrategy.SpinThenPark(10, 10, 1000, 2000000));
+		startEndPoint(client);
+		client.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (!(object instanceof Integer))
+					return;
+				int count = received.incrementAndGet();
+				if (count == messageCount)
+					stopEndPoints();
+				else
+					connection.sendTCP(count);
+			}
+		});
+		client.connect(5000, host, tcpPort);
+		client.sendTCP(0);
+
+		waitForThreads(10000);
+		assertEquals(messageCount, received.get());
+	}
+}
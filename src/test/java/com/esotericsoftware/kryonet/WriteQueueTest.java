@@ -0,0 +1,169 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.esotericsoftware.minlog.Log;
+
+import org.junit.jupiter.api.Test;
+
+public class WriteQueueTest extends KryoNetTestCase {
+	@Test
+	public void testBackpressure() throws IOException, InterruptedException {
+		// Sending megabytes is too slow with trace logging.
+		Log.INFO();
+
+		final int messageSize = 6000, maxMessages = 100000;
+		final CountDownLatch stalled = new CountDownLatch(1);
+		final List<Boolean> writability = new ArrayList<>();
+		final AtomicInteger received = new AtomicInteger();
+		final AtomicInteger sent = new AtomicInteger(-1);
+		final AtomicInteger corrupt = new AtomicInteger();
+
+		final Server server = new Server(16384, 8192);
+		server.getKryo().register(byte[].class);
+		// Smaller than a message, so a message spans segments and
+		// overflows the watermark.
+		server.setWriteQueue(2000, 4000);
+		startEndPoint(server);
+		server.bind(tcpPort);
+		server.addListener(new Listener() {
+			public void writabilityChanged(Connection connection,
+					boolean writable) {
+				synchronized (writability) {
+					writability.add(writable);
+				}
+			}
+		});
+
+		// ----
+
+		final Client client = new Client(8192, 8192);
+		client.getKryo().register(byte[].class);
+		startEndPoint(client);
+		client.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (!(object instanceof byte[]))
+					return;
+				try {
+					// Stop reading until the server is unwritable.
+					stalled.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException ignored) {
+				}
+				byte[] bytes = (byte[]) object;
+				int count = received.getAndIncrement();
+				for (byte b : bytes)
+					if (b != (byte) count)
+						corrupt.incrementAndGet();
+				if (count + 1 == sent.get())
+					stopEndPoints();
+			}
+		});
+		client.connect(5000, host, tcpPort);
+
+		Connection connection = server.getConnections().iterator().next();
+		int count = 0;
+		while (connection.isWritable() && count < maxMessages) {
+			byte[] bytes = new byte[messageSize];
+			Arrays.fill(bytes, (byte) count++);
+			connection.sendTCP(bytes);
+		}
+		assertFalse(connection.isWritable());
+		sent.set(count);
+		stalled.countDown();
+
+		waitForThreads(10000);
+		Log.TRACE();
+
+		assertEquals(count, received.get());
+		assertEquals(0, corrupt.get());
+		assertTrue(connection.isWritable());
+		synchronized (writability) {
+			assertEquals(Arrays.asList(false, true), writability);
+		}
+	}
+
+	@Test
+	public void testConcurrentSenders() throws IOException,
+			InterruptedException {
+		Log.INFO();
+
+		final int threads = 8, messages = 2000;
+		final int[] next = new int[threads];
+		final AtomicInteger received = new AtomicInteger();
+		final AtomicInteger outOfOrder = new AtomicInteger();
+
+		final Server server = new Server();
+		server.getKryo().register(int[].class);
+		server.setWriteQueue(64 * 1024, 256 * 1024);
+		server.setWorkerCount(2);
+		startEndPoint(server);
+		server.bind(tcpPort);
+
+		// ----
+
+		final Client client = new Client();
+		client.getKryo().register(int[].class);
+		startEndPoint(client);
+		client.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (!(object instanceof int[]))
+					return;
+				int[] message = (int[]) object;
+				if (next[message[0]]++ != message[1])
+					outOfOrder.incrementAndGet();
+				if (received.incrementAndGet() == threads * messages)
+					stopEndPoints();
+			}
+		});
+		client.connect(5000, host, tcpPort);
+
+		final Connection connection = server.getConnections().iterator()
+				.next();
+		Thread[] senders = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final int thread = i;
+			senders[i] = new Thread(() -> {
+				for (int ii = 0; ii < messages; ii++)
+					connection.sendTCP(new int[] { thread, ii });
+			});
+			senders[i].start();
+		}
+		for (Thread sender : senders)
+			sender.join();
+
+		waitForThreads(10000);
+		Log.TRACE();
+
+		assertEquals(threads * messages, received.get());
+		assertEquals(0, outOfOrder.get());
+	}
+}
@@ -51,4 +51,33 @@ public class TypeListenerTest {
 		assertEquals((Integer) 2, j);
 	}
 
+	@Test
+	public void testSupertypes() {
+		TypeListener listener = new TypeListener();
+		listener.addTypeHandler(Number.class, (t, u) -> i = "number " + u);
+		listener.addTypeHandler(CharSequence.class,
+				(t, u) -> i = "chars " + u);
+
+		// Superclasses and interfaces.
+		listener.received(null, 2);
+		assertEquals("number 2", i);
+		listener.received(null, new StringBuilder("test"));
+		assertEquals("chars test", i);
+
+		// The handler of the class itself is preferred, also once cached.
+		listener.addTypeHandler(Integer.class, (t, u) -> i = "integer " + u);
+		listener.received(null, 3);
+		assertEquals("integer 3", i);
+		listener.received(null, 4L);
+		assertEquals("number 4", i);
+
+		listener.removeTypeHandler(Integer.class);
+		listener.received(null, 5);
+		assertEquals("number 5", i);
+
+		// No handler.
+		listener.received(null, new Object());
+		assertEquals("number 5", i);
+	}
+
 }
@@ -0,0 +1,92 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import com.esotericsoftware.kryonet.serialization.ThreadLocalKryoSerializationTest.Snapshot;
+import com.esotericsoftware.minlog.Log;
+
+/**
+ * Compares encoding and decoding on 16 threads at once with a shared
+ * {@link KryoSerialization} and with a {@link ThreadLocalKryoSerialization}.
+ * Not part of the unit tests, as the timings depend on the machine. Run the
+ * main method to print them.
+ */
+public class ThreadLocalKryoSerializationBenchmark {
+	static final int SENDERS = ThreadLocalKryoSerializationTest.SENDERS;
+
+	public static void main(String[] args) throws InterruptedException {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+
+		KryoSerialization shared = new KryoSerialization();
+		ThreadLocalKryoSerializationTest.registerSnapshot(shared.getKryo());
+		ThreadLocalKryoSerialization threadLocal = new ThreadLocalKryoSerialization(
+				ThreadLocalKryoSerializationTest::registerSnapshot);
+
+		// Logging would dominate the measurement.
+		Log.WARN();
+
+		// Warm up
+		run(shared, iterations / 10);
+		run(threadLocal, iterations / 10);
+
+		long sharedTime = run(shared, iterations);
+		long threadLocalTime = run(threadLocal, iterations);
+
+		System.out.println(
+				SENDERS + " threads, " + iterations + " objects each:");
+		System.out.println("KryoSerialization:            "
+				+ sharedTime / 1000000 + " ms");
+		System.out.println("ThreadLocalKryoSerialization: "
+				+ threadLocalTime / 1000000 + " ms");
+	}
+
+	/** @return The nanoseconds until all threads encoded and decoded. */
+	static private long run(Serialization serialization, int iterations)
+			throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(SENDERS);
+		for (int i = 0; i < SENDERS; i++) {
+			final int id = i;
+			new Thread(() -> {
+				ByteBuffer buffer = ByteBuffer.allocate(256);
+				try {
+					start.await();
+					for (int ii = 0; ii < iterations; ii++) {
+						buffer.clear();
+						serialization.write(null, buffer,
+								new Snapshot(id, ii));
+						buffer.flip();
+						serialization.read(null, buffer);
+					}
+				} catch (InterruptedException ignored) {
+				} finally {
+					done.countDown();
+				}
+			}, "Sender " + i).start();
+		}
+		long startTime = System.nanoTime();
+		start.countDown();
+		done.await();
+		return System.nanoTime() - startTime;
+	}
+}
@@ -0,0 +1,168 @@
+/* Copyright (c) 2008, Nathan Sweet
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution.
+ * - Neither the name of Esoteric Software nor the names of its contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.esotericsoftware.kryonet.serialization;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryonet.Client;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.KryoNetTestCase;
+import com.esotericsoftware.kryonet.Listener;
+import com.esotericsoftware.kryonet.Server;
+
+import org.junit.jupiter.api.Test;
+
+public class ThreadLocalKryoSerializationTest extends KryoNetTestCase {
+	static final int SENDERS = 16;
+
+	@Test
+	public void testConcurrentSenders() throws IOException {
+		final int messageCount = 200;
+		final AtomicInteger received = new AtomicInteger();
+
+		final Server server = new Server(Server.DEFAULT_WRITE_BUFFER_SIZE,
+				Server.DEFAULT_OBJECT_BUFFER_SIZE,
+				new ThreadLocalKryoSerialization(
+						ThreadLocalKryoSerializationTest::registerSnapshot));
+		startEndPoint(server);
+		server.bind(tcpPort);
+
+		// ----
+
+		// The other end may still use the plain KryoSerialization.
+		final Client client = new Client(65536,
+				Client.DEFAULT_OBJECT_BUUFER_SIZE);
+		registerSnapshot(client.getKryo());
+		startEndPoint(client);
+		client.addListener(new Listener() {
+			public void received(Connection connection, Object object) {
+				if (object instanceof Snapshot
+						&& received.incrementAndGet() == SENDERS
+								* messageCount)
+					stopEndPoints();
+			}
+		});
+		client.connect(5000, host, tcpPort);
+
+		for (int i = 0; i < SENDERS; i++) {
+			final int id = i;
+			new Thread(() -> {
+				for (int ii = 0; ii < messageCount; ii++) {
+					server.sendToAllTCP(new Snapshot(id, ii));
+					if (ii % 20 == 0)
+						Thread.yield();
+				}
+			}, "Sender " + i).start();
+		}
+
+		waitForThreads(5000);
+
+		assertEquals(SENDERS * messageCount, received.get());
+	}
+
+	/**
+	 * Encodes and decodes objects on 16 threads at once. Every thread has to
+	 * produce the same bytes as a {@link KryoSerialization} used by one
+	 * thread at a time.
+	 */
+	@Test
+	public void testConcurrentEncoding() throws InterruptedException {
+		final int iterations = 500;
+
+		final KryoSerialization reference = new KryoSerialization();
+		registerSnapshot(reference.getKryo());
+		final ThreadLocalKryoSerialization threadLocal = new ThreadLocalKryoSerialization(
+				ThreadLocalKryoSerializationTest::registerSnapshot);
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(SENDERS);
+		final AtomicInteger errors = new AtomicInteger();
+		for (int i = 0; i < SENDERS; i++) {
+			final int id = i;
+			new Thread(() -> {
+				ByteBuffer buffer = ByteBuffer.allocate(256);
+				try {
+					start.await();
+					for (int ii = 0; ii < iterations; ii++) {
+						Snapshot snapshot = new Snapshot(id, ii);
+						buffer.clear();
+						threadLocal.write(null, buffer, snapshot);
+						buffer.flip();
+						if (!buffer.equals(
+								ByteBuffer.wrap(encode(reference, snapshot))))
+							errors.incrementAndGet();
+						Snapshot read = (Snapshot) threadLocal.read(null,
+								buffer);
+						if (read.id != id || read.tick != ii
+								|| !read.name.equals(snapshot.name))
+							errors.incrementAndGet();
+					}
+				} catch (Throwable ex) {
+					errors.incrementAndGet();
+				} finally {
+					done.countDown();
+				}
+			}, "Encoder " + i).start();
+		}
+		start.countDown();
+		done.await();
+
+		assertEquals(0, errors.get());
+	}
+
+	static private byte[] encode(Serialization serialization, Object object) {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		serialization.write(null, buffer, object);
+		buffer.flip();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	static void registerSnapshot(Kryo kryo) {
+		kryo.register(float[].class);
+		kryo.register(Snapshot.class);
+	}
+
+	static public class Snapshot {
+		public int id, tick;
+		public float x, y;
+		public String name;
+		public float[] values;
+
+		public Snapshot() {
+		}
+
+		public Snapshot(int id, int tick) {
+			this.id = id;
+			this.tick = tick;
+			this.x = id * 1.5f;
+			this.y = tick * 0.5f;
+			this.name = "Entity " + id;
+			this.values = new float[] { id, tick, id + tick };
+		}
+	}
+}